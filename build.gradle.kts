@@ -10,6 +10,7 @@ plugins {
     kotlin("jvm") version "2.1.0"
     id("maven-publish")
     id("me.modmuss50.mod-publish-plugin") version "0.8.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 version = rootProject.extra["mod.version"] as String
@@ -87,6 +88,21 @@ loom {
     }
 }
 
+// Benchmarks in src/jmh run against the main classes and the Minecraft classes they use
+sourceSets.named("jmh") {
+    compileClasspath += sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().runtimeClasspath
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Allocations per call next to the throughput, see gc.alloc.rate.norm
+    profilers.add("gc")
+}
+
 java {
     withSourcesJar()
     val javaVersion = JavaVersion.toVersion(stringJavaVersion)
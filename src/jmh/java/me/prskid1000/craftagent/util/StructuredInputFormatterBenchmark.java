@@ -0,0 +1,116 @@
+package me.prskid1000.craftagent.util;
+
+import me.prskid1000.craftagent.model.context.ContextData;
+import me.prskid1000.craftagent.model.context.WorldContext;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link ContextJsonWriter} with the map-based path
+ * ({@link StructuredInputFormatter#createContextMap} + ObjectMapper) on a large context:
+ * full inventory, the block and entity limits, line of sight and filled memory.
+ * Run with {@code ./gradlew jmh}, the gc profiler reports the allocations per call
+ * under {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StructuredInputFormatterBenchmark {
+
+    private static final String PROMPT = "Player Steve: can you gather some oak logs and bring them to the village?";
+
+    private WorldContext context;
+
+    @Setup
+    public void setUp() {
+        context = createLargeContext();
+    }
+
+    @Benchmark
+    public String streaming() {
+        return StructuredInputFormatter.formatStructured(PROMPT, context);
+    }
+
+    @Benchmark
+    public String mapBased() {
+        return StructuredInputFormatter.formatStructured(PROMPT, StructuredInputFormatter.createContextMap(context));
+    }
+
+    static WorldContext createLargeContext() {
+        List<ContextData.ItemData> hotbar = new ArrayList<>();
+        List<ContextData.ItemData> mainInventory = new ArrayList<>();
+        for (int slot = 0; slot < 9; slot++) {
+            hotbar.add(new ContextData.ItemData("minecraft:oak_log", 64, slot));
+        }
+        for (int slot = 9; slot < 36; slot++) {
+            mainInventory.add(new ContextData.ItemData("minecraft:cobblestone", 32 + slot, slot));
+        }
+        List<ContextData.ItemData> armor = List.of(
+                new ContextData.ItemData("minecraft:iron_helmet", 1, 39),
+                new ContextData.ItemData("minecraft:iron_chestplate", 1, 38),
+                new ContextData.ItemData("minecraft:iron_leggings", 1, 37),
+                new ContextData.ItemData("minecraft:iron_boots", 1, 36));
+        List<ContextData.ItemData> offHand = List.of(new ContextData.ItemData("minecraft:torch", 16, 40));
+
+        List<ContextData.BlockData> nearbyBlocks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            nearbyBlocks.add(new ContextData.BlockData("minecraft:iron_ore", new BlockPos(100 + i, 12 - i % 5, -40 + i),
+                    "stone", "minecraft:stone_pickaxe"));
+        }
+        List<ContextData.EntityData> nearbyEntities = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            nearbyEntities.add(new ContextData.EntityData(1000 + i, "Villager" + i, i % 4 == 0));
+        }
+
+        List<ContextData.ItemEntityData> visibleItems = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            visibleItems.add(new ContextData.ItemEntityData("minecraft:wheat_seeds", 1 + i, new BlockPos(90 + i, 64, -30), 3.5 + i));
+        }
+        List<ContextData.BlockData> visibleBlocks = new ArrayList<>(nearbyBlocks.subList(0, 20));
+        ContextData.LineOfSightData lineOfSight = new ContextData.LineOfSightData(visibleItems,
+                nearbyEntities.subList(0, 5), nearbyBlocks.get(0), visibleBlocks);
+
+        Map<String, Object> memory = new HashMap<>();
+        memory.put("mail", pages("senderName", 10));
+        memory.put("privateBook", pages("pageTitle", 20));
+        memory.put("sharebook", pages("pageTitle", 20));
+
+        Map<String, Object> actionData = new HashMap<>();
+        actionData.put("blockType", "minecraft:oak_log");
+        actionData.put("target", Map.of("x", 95, "y", 65, "z", -28));
+
+        return new WorldContext(
+                new ContextData.StateData(new BlockPos(96, 64, -30), 18.5f, 17, "minecraft:plains"),
+                new ContextData.InventoryData(armor, mainInventory, hotbar, offHand),
+                nearbyBlocks,
+                nearbyEntities,
+                memory,
+                new ContextData.NavigationData("traveling", new BlockPos(120, 64, -10), "Traveling to the village", 4200),
+                lineOfSight,
+                new ContextData.ActionStateData("mining", "Mining iron ore", actionData, 1800));
+    }
+
+    private static List<Map<String, Object>> pages(String titleKey, int count) {
+        List<Map<String, Object>> pages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> page = new HashMap<>();
+            page.put(titleKey, "entry_" + i);
+            page.put("content", "Oak forest north of the village at x=" + (23 + i) + ", y=64, z=4. Good spot for logs and apples, avoid at night.");
+            page.put("timestamp", 1_760_000_000_000L + i);
+            pages.add(page);
+        }
+        return pages;
+    }
+}
@@ -133,6 +133,9 @@ public class CommunicationActionHandler implements ActionSyntaxProvider {
             );
             
             messageRepository.insert(message, baseConfig.getMaxMessages());
+            npcService.onMailReceived(recipientNpc.getConfig().getUuid(), timestamp);
+            // Let the recipient answer right away instead of waiting for its next turn
+            npcService.getWakeupQueue().wake(recipientNpc.getConfig().getUuid());
             
             // Verify the message was actually added by checking recent messages
             var recentMessages = messageRepository.selectByRecipient(recipientNpc.getConfig().getUuid(), 10);
@@ -6,13 +6,16 @@ import me.prskid1000.craftagent.memory.MemoryManager;
 import me.prskid1000.craftagent.model.database.SharebookPage;
 import me.prskid1000.craftagent.util.LogUtil;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
  * Handles memory actions: SharedBook and PrivateBook.
- * Format: "sharedbook add <title> '<content>'" or "sharedbook remove <title>"
+ * Format: "sharedbook add <title> '<content>'", "sharedbook remove <title>" or "sharedbook search <query>"
  * 
  * IMPORTANT: Content MUST be wrapped in single quotes (') or double quotes (") for "add" operations.
  * This allows multi-word content and special characters to be parsed correctly.
@@ -22,6 +25,9 @@ import java.util.UUID;
  */
 public class MemoryActionHandler implements ActionSyntaxProvider {
     
+    // Pages returned per search action
+    private static final int SEARCH_LIMIT = 5;
+    
     private final MemoryManager memoryManager;
     private final SharebookRepository sharebookRepository;
     private final UUID npcUuid;
@@ -48,6 +54,12 @@ public class MemoryActionHandler implements ActionSyntaxProvider {
         String pageTitle = parsed[2].trim();
         String content = parsed.length > 3 ? parsed[3] : "";
         
+        // For "search" operations, the rest of the action is the query, quoted or not
+        if ("search".equals(operation)) {
+            String query = String.join(" ", Arrays.copyOfRange(parsed, 2, parsed.length)).trim();
+            return handleSearch(bookType, query);
+        }
+        
         // For "add" operations, content MUST be in single or double quotes
         if ("add".equals(operation)) {
             if (content.isEmpty()) {
@@ -78,6 +90,62 @@ public class MemoryActionHandler implements ActionSyntaxProvider {
     
     
     
+    /**
+     * Looks the query up in the full-text index of the book. Actions return no result, so the
+     * found pages are shown in memory.searchResults of the next context.
+     */
+    private boolean handleSearch(String bookType, String query) {
+        if (query.isEmpty()) {
+            LogUtil.error("MemoryActionHandler: Query is required for 'search' operation");
+            return false;
+        }
+        
+        if (memoryManager == null) {
+            LogUtil.error("MemoryActionHandler: MemoryManager is null for NPC: " + npcName + " (" + npcUuid + ")");
+            return false;
+        }
+        
+        List<Map<String, Object>> pages = new ArrayList<>();
+        switch (bookType) {
+            case "privatebook" -> memoryManager.searchPages(query, SEARCH_LIMIT).forEach(page -> {
+                Map<String, Object> pageMap = new HashMap<>();
+                pageMap.put("pageTitle", page.getPageTitle());
+                pageMap.put("content", page.getContent());
+                pages.add(pageMap);
+            });
+            case "sharedbook" -> {
+                if (sharebookRepository == null) {
+                    LogUtil.error("MemoryActionHandler: SharebookRepository is null for NPC: " + npcName + " (" + npcUuid + ")");
+                    return false;
+                }
+                try {
+                    sharebookRepository.search(query, SEARCH_LIMIT).forEach(page -> {
+                        Map<String, Object> pageMap = new HashMap<>();
+                        pageMap.put("pageTitle", page.getPageTitle());
+                        pageMap.put("content", page.getContent());
+                        pageMap.put("authorUuid", page.getAuthorUuid());
+                        pages.add(pageMap);
+                    });
+                } catch (Exception e) {
+                    LogUtil.error("MemoryActionHandler: Error searching sharedbook for: " + query, e);
+                    return false;
+                }
+            }
+            default -> {
+                LogUtil.error("MemoryActionHandler: Unknown book type: " + bookType);
+                return false;
+            }
+        }
+        
+        // An empty page list tells the NPC that nothing matched
+        Map<String, Object> result = new HashMap<>();
+        result.put("book", bookType);
+        result.put("query", query);
+        result.put("pages", pages);
+        memoryManager.addSearchResults(List.of(result));
+        return true;
+    }
+    
     private boolean handleSharedBook(String op, String title, String content) {
         if (sharebookRepository == null) {
             LogUtil.error("MemoryActionHandler: SharebookRepository is null for NPC: " + npcName + " (" + npcUuid + ")");
@@ -195,7 +263,7 @@ public class MemoryActionHandler implements ActionSyntaxProvider {
         if (!validBookType) return false;
         
         boolean validOp = switch (op) {
-            case "add", "remove" -> true;
+            case "add", "remove", "search" -> true;
             default -> false;
         };
         if (!validOp) return false;
@@ -214,7 +282,7 @@ public class MemoryActionHandler implements ActionSyntaxProvider {
             return !content.trim().isEmpty();
         }
         
-        return true; // "remove" operation only needs 3 parts
+        return true; // "remove" and "search" operations only need 3 parts
     }
     
     @Override
@@ -230,8 +298,10 @@ public class MemoryActionHandler implements ActionSyntaxProvider {
         return Arrays.asList(
             "sharedbook add <title> '<content>'",
             "sharedbook remove <title>",
+            "sharedbook search '<query>'",
             "privatebook add <title> '<content>'",
-            "privatebook remove <title>"
+            "privatebook remove <title>",
+            "privatebook search '<query>'"
         );
     }
 }
@@ -74,13 +74,9 @@ public class MiningActionHandler implements ActionSyntaxProvider {
         actionData.put("mined", 0);
         actionState.setAction(ActionStateManager.ActionType.MINING, actionData);
         
-        // Find nearby blocks of this type
-        var nearbyBlocks = contextProvider.getChunkManager().getNearbyBlocks();
-        var targetBlocks = nearbyBlocks.stream()
-            .filter(block -> block.type().toLowerCase().equals(blockType) || 
-                           block.type().toLowerCase().contains(blockType))
-            .limit(count)
-            .toList();
+        // Find the nearest blocks of this type in the indexed chunks
+        var targetBlocks = contextProvider.getChunkManager()
+            .findNearestBlocks(blockType, npcEntity.getBlockPos(), count);
         
         if (targetBlocks.isEmpty()) {
             LogUtil.error("MiningActionHandler: No blocks of type found nearby: " + blockType);
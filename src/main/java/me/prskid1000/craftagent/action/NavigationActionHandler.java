@@ -135,11 +135,10 @@ public class NavigationActionHandler implements ActionSyntaxProvider {
         
         String blockType = parsed[3].toLowerCase();
         
-        // Find block in nearby blocks from context
-        var nearbyBlocks = contextProvider.getChunkManager().getNearbyBlocks();
-        var targetBlock = nearbyBlocks.stream()
-            .filter(block -> block.type().toLowerCase().equals(blockType) || 
-                           block.type().toLowerCase().contains(blockType))
+        // Find the nearest block of this type in the indexed chunks
+        var targetBlock = contextProvider.getChunkManager()
+            .findNearestBlocks(blockType, npcEntity.getBlockPos(), 1)
+            .stream()
             .findFirst()
             .orElse(null);
         
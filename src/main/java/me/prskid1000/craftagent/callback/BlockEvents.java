@@ -0,0 +1,25 @@
+package me.prskid1000.craftagent.callback;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+public final class BlockEvents {
+
+	public static final Event<OnBlockChanged> BLOCK_CHANGED = EventFactory.createArrayBacked(OnBlockChanged.class, listeners ->
+		(world, pos, oldState, newState) -> {
+			for (OnBlockChanged listener : listeners) {
+				listener.onBlockChanged(world, pos, oldState, newState);
+			}
+	});
+
+	@FunctionalInterface
+	public interface OnBlockChanged {
+
+		void onBlockChanged(ServerWorld world, BlockPos pos, BlockState oldState, BlockState newState);
+
+	}
+
+}
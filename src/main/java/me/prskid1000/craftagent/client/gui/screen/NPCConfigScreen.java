@@ -39,6 +39,9 @@ public class NPCConfigScreen extends ConfigScreen<NPCConfig> {
         drawGenderRow(content);
         drawAgeRow(content);
         drawSkipLLMRow(content);
+        drawContextDeltaRow(content);
+        drawPromptTokenBudgetRow(content);
+        drawCompactContextRow(content);
 
         onPressSaveButton(rootComponent, button -> {
             if (isEdit) networkManager.sendPacket(new UpdateNpcConfigPacket(config));
@@ -210,4 +213,47 @@ public class NPCConfigScreen extends ConfigScreen<NPCConfig> {
 
         skipLLMRow.child(skipLLMCheckbox);
     }
+
+    private void drawContextDeltaRow(FlowLayout content) {
+        FlowLayout contextDeltaRow = content.childById(FlowLayout.class, "contextDeltaRow");
+        contextDeltaRow.clearChildren();
+
+        contextDeltaRow.child(Components.label(Text.of(NPCConfig.CONTEXT_DELTA_MODE)).shadow(true));
+
+        CheckboxComponent contextDeltaCheckbox = Components.checkbox(Text.of("Send only context changes"));
+        contextDeltaCheckbox.checked(config.isContextDeltaMode());
+        contextDeltaCheckbox.onChanged(config::setContextDeltaMode);
+
+        contextDeltaRow.child(contextDeltaCheckbox);
+    }
+
+    private void drawPromptTokenBudgetRow(FlowLayout content) {
+        FlowLayout promptTokenBudgetRow = content.childById(FlowLayout.class, "promptTokenBudgetRow");
+        promptTokenBudgetRow.clearChildren();
+
+        promptTokenBudgetRow.child(Components.label(Text.of(NPCConfig.PROMPT_TOKEN_BUDGET)).shadow(true));
+
+        TextAreaComponent budgetInput = Components.textArea(Sizing.fill(100), INPUT_H)
+                .text(String.valueOf(config.getPromptTokenBudget()));
+
+        budgetInput.onChanged().subscribe(v -> {
+            try { config.setPromptTokenBudget(Integer.parseInt(v.trim())); }
+            catch (NumberFormatException ignored) {}
+        });
+
+        promptTokenBudgetRow.child(budgetInput);
+    }
+
+    private void drawCompactContextRow(FlowLayout content) {
+        FlowLayout compactContextRow = content.childById(FlowLayout.class, "compactContextRow");
+        compactContextRow.clearChildren();
+
+        compactContextRow.child(Components.label(Text.of(NPCConfig.COMPACT_CONTEXT)).shadow(true));
+
+        CheckboxComponent compactContextCheckbox = Components.checkbox(Text.of("Encode lists as tables"));
+        compactContextCheckbox.checked(config.isCompactContext());
+        compactContextCheckbox.onChanged(config::setCompactContext);
+
+        compactContextRow.child(compactContextCheckbox);
+    }
 }
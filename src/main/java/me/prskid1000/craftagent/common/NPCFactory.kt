@@ -12,8 +12,10 @@ import me.prskid1000.craftagent.event.NPCEventHandler
 import me.prskid1000.craftagent.exception.CraftAgentException
 import me.prskid1000.craftagent.history.ConversationHistory
 import me.prskid1000.craftagent.history.ConversationMessage
+import me.prskid1000.craftagent.llm.BatchingLLMClient
 import me.prskid1000.craftagent.llm.LLMClient
 import me.prskid1000.craftagent.llm.LLMType
+import me.prskid1000.craftagent.llm.PooledLLMClient
 import me.prskid1000.craftagent.llm.ollama.OllamaClient
 import me.prskid1000.craftagent.llm.lmstudio.LMStudioClient
 import me.prskid1000.craftagent.memory.MemoryManager
@@ -33,7 +35,7 @@ class NPCFactory(
     }
      fun createNpc(npcEntity: ServerPlayerEntity, config: NPCConfig): NPC {
         val baseConfig = configProvider.baseConfig
-        val contextProvider = ContextProvider(npcEntity, baseConfig)
+        val contextProvider = ContextProvider(npcEntity, baseConfig, npcService!!.worldScanService)
         
         // Create memory manager
         val memoryManager = MemoryManager(privateBookPageRepository, config.uuid, baseConfig)
@@ -41,6 +43,7 @@ class NPCFactory(
         
         // Set repositories for mail and sharebook
         contextProvider.setRepositories(messageRepository, sharebookRepository, config.uuid)
+        contextProvider.setMemoryRetriever(npcService!!.memoryRetriever)
 
         val llmClient = initLLMClient(config)
 
@@ -62,45 +65,72 @@ class NPCFactory(
         val history = ConversationHistory(
             llmClient,
             conversationRepository,
+            npcService!!.conversationWriter,
             config.uuid,
             systemPromptGenerator,
             baseConfig.conversationHistoryLength
         )
-        val eventHandler = NPCEventHandler(llmClient, history, contextProvider, config, messageRepository, sharebookRepository, npcService!!)
+        val eventHandler = NPCEventHandler(
+            llmClient,
+            history,
+            contextProvider,
+            config,
+            messageRepository,
+            sharebookRepository,
+            npcService!!,
+            configProvider.llmBackendConfig
+        )
         return NPC(npcEntity, llmClient, history, eventHandler, contextProvider, config)
     }
 
     private fun initLLMClient(config: NPCConfig): LLMClient {
-        val baseConfig = configProvider.baseConfig
-        val llmClient = when (config.llmType) {
-            LLMType.OLLAMA -> {
-                OllamaClient(config.llmModel, config.ollamaUrl, baseConfig.llmTimeout, baseConfig.isVerbose)
-            }
-            LLMType.LM_STUDIO -> {
-                LMStudioClient(config.llmModel, config.lmStudioUrl, baseConfig.llmTimeout)
-            }
-            else -> throw CraftAgentException.npcCreation("Invalid LLM type: ${config.llmType}")
-        }
         // Note: Health check is done in NPCService.createNpc() before spawning to avoid blocking server thread
-        return llmClient
+        return BatchingLLMClient(createPooledLLMClient(config), npcService!!.llmRequestBatcher, config.llmUrl, config.llmModel)
     }
     
     /**
      * Check if the LLM service is reachable. This should be called on a background thread,
-     * not on the Minecraft server thread.
+     * not on the Minecraft server thread. Answers from the last health probe of the server if it is recent.
      */
     fun checkLLMServiceReachable(config: NPCConfig) {
+        createPooledLLMClient(config).checkServiceIsReachable()
+    }
+
+    /**
+     * Creates the client for the LLM of the NPC that spreads its requests over the servers of its backend URL.
+     */
+    private fun createPooledLLMClient(config: NPCConfig): LLMClient {
+        return PooledLLMClient(config.llmUrl, npcService!!.llmEndpointPool) { url -> createLLMClient(config, url) }
+    }
+
+    /**
+     * Creates the client for the LLM of the NPC on one server, it uses the shared connections of the server.
+     */
+    private fun createLLMClient(config: NPCConfig, url: String): LLMClient {
         val baseConfig = configProvider.baseConfig
-        val llmClient = when (config.llmType) {
+        val httpClients = npcService!!.llmHttpClients
+        return when (config.llmType) {
             LLMType.OLLAMA -> {
-                OllamaClient(config.llmModel, config.ollamaUrl, baseConfig.llmTimeout, baseConfig.isVerbose)
+                OllamaClient(
+                    config.llmModel,
+                    url,
+                    baseConfig.llmTimeout,
+                    baseConfig.isVerbose,
+                    configProvider.llmBackendConfig.keepAliveMinutes,
+                    httpClients
+                )
             }
             LLMType.LM_STUDIO -> {
-                LMStudioClient(config.llmModel, config.lmStudioUrl, baseConfig.llmTimeout)
+                LMStudioClient(
+                    config.llmModel,
+                    url,
+                    baseConfig.llmTimeout,
+                    configProvider.llmBackendConfig.keepAliveMinutes,
+                    httpClients
+                )
             }
             else -> throw CraftAgentException.npcCreation("Invalid LLM type: ${config.llmType}")
         }
-        llmClient.checkServiceIsReachable()
     }
 
 }
@@ -6,10 +6,17 @@ import me.prskid1000.craftagent.config.BaseConfig
 import me.prskid1000.craftagent.config.ConfigProvider
 import me.prskid1000.craftagent.config.NPCConfig
 import me.prskid1000.craftagent.constant.Instructions
+import me.prskid1000.craftagent.context.WorldScanService
 import me.prskid1000.craftagent.coordination.CoordinationService
 import me.prskid1000.craftagent.database.resources.ResourceProvider
 import me.prskid1000.craftagent.exception.CraftAgentException
+import me.prskid1000.craftagent.llm.LLMConcurrencyLimiter
+import me.prskid1000.craftagent.llm.LLMEndpointPool
+import me.prskid1000.craftagent.llm.LLMHttpClientRegistry
+import me.prskid1000.craftagent.llm.LLMRequestBatcher
+import me.prskid1000.craftagent.memory.MemoryRetriever
 import me.prskid1000.craftagent.model.NPC
+import me.prskid1000.craftagent.thread.VirtualThreads
 import me.prskid1000.craftagent.util.LogUtil
 import net.minecraft.entity.player.PlayerEntity
 import net.minecraft.server.MinecraftServer
@@ -31,6 +38,16 @@ class NPCService(
     @JvmField
     var webServer: me.prskid1000.craftagent.web.WebServer? = null
     val coordinationService = CoordinationService(this)
+    val worldScanService = WorldScanService()
+    val llmConcurrencyLimiter = LLMConcurrencyLimiter { configProvider.llmBackendConfig }
+    val llmRequestBatcher = LLMRequestBatcher(llmConcurrencyLimiter) { configProvider.llmBackendConfig }
+    val llmHttpClients = LLMHttpClientRegistry { configProvider.llmBackendConfig }
+    val llmEndpointPool = LLMEndpointPool(llmHttpClients) { configProvider.llmBackendConfig }
+    val memoryRetriever = MemoryRetriever(llmHttpClients) { configProvider.llmBackendConfig }
+    val wakeupQueue = WakeupQueue()
+    val conversationWriter get() = resourceProvider.conversationWriter
+    // Time of the latest mail per NPC, the scheduler reads it every tick without going to the database
+    private val latestMailTimestamps = ConcurrentHashMap<UUID, Long>()
 
     private lateinit var executorService: ExecutorService
     val uuidToNpc = ConcurrentHashMap<UUID, NPC>()
@@ -59,6 +76,33 @@ class NPCService(
         configProvider.saveNpcConfig(config)
     }
 
+    /**
+     * Gets the time of the latest mail to an NPC, 0 if it has none.
+     */
+    fun getLatestMailTimestamp(npcUuid: UUID): Long {
+        return latestMailTimestamps[npcUuid] ?: 0L
+    }
+
+    /**
+     * Records mail stored for an NPC, called wherever mail is inserted.
+     */
+    fun onMailReceived(npcUuid: UUID, timestamp: Long) {
+        latestMailTimestamps.merge(npcUuid, timestamp) { current, latest -> maxOf(current, latest) }
+    }
+
+    /**
+     * Loads the time of the latest stored mail of every NPC once, later mail is recorded by onMailReceived.
+     */
+    private fun loadLatestMailTimestamps() {
+        val messageRepository = resourceProvider.messageRepository ?: return
+        configProvider.getNpcConfigs().forEach { config ->
+            val latest = messageRepository.selectLatestTimestamp(config.uuid)
+            if (latest > 0) {
+                onMailReceived(config.uuid, latest)
+            }
+        }
+    }
+
     /**
      * Sends a message from a player to an NPC via mail system.
      * Messages are stored in mail and can be read by the NPC later.
@@ -76,6 +120,7 @@ class NPCService(
         
         val maxMessages = configProvider.baseConfig.getMaxMessages()
         messageRepository.insert(message, maxMessages)
+        onMailReceived(npcUuid, message.timestamp)
         
         // Message is stored in mail system and will be available in context during next LLM call
         // Note: Don't display in chat again - the original player message is already visible
@@ -83,8 +128,10 @@ class NPCService(
     }
 
     fun init(server: MinecraftServer) {
-        executorService = Executors.newSingleThreadExecutor()
+        // NPC creation waits on the LLM health check, keep that off platform threads where possible
+        executorService = Executors.newSingleThreadExecutor(VirtualThreads.factory("CraftAgent-NPC-"))
         registerDeathEvent()
+        loadLatestMailTimestamps()
         respawnActiveNPCs(server)
     }
 
@@ -229,11 +276,13 @@ class NPCService(
             CompletableFuture.runAsync({
                 try {
                     // Delete conversations
+                    resourceProvider.conversationWriter.discard(uuid)
                     resourceProvider.conversationRepository.deleteByUuid(uuid)
                     // Delete private book pages
                     resourceProvider.privateBookPageRepository?.deleteByNpcUuid(uuid)
                     // Delete messages where NPC is sender or recipient
                     resourceProvider.messageRepository?.deleteByNpcUuid(uuid)
+                    latestMailTimestamps.remove(uuid)
                     // Note: Sharebook is global/shared knowledge - cleared only when NPC count becomes 0
                 } catch (e: Exception) {
                     LogUtil.error("Error deleting data for removed NPC: $uuid", e)
@@ -286,11 +335,13 @@ class NPCService(
             // Database operations on background thread (blocking I/O)
             CompletableFuture.runAsync({
                 try {
+                    resourceProvider.conversationWriter.discard(uuid)
                     resourceProvider.conversationRepository.deleteByUuid(uuid)
                     // Delete private book pages for this NPC
                     resourceProvider.privateBookPageRepository?.deleteByNpcUuid(uuid)
                     // Delete messages where NPC is sender or recipient
                     resourceProvider.messageRepository?.deleteByNpcUuid(uuid)
+                    latestMailTimestamps.remove(uuid)
                     // Note: Sharebook is global/shared knowledge - cleared only when NPC count becomes 0
                     
                     configProvider.deleteNpcConfig(uuid)
@@ -303,11 +354,13 @@ class NPCService(
             CompletableFuture.runAsync({
                 try {
                     // Conversations are stored in database, no need to remove from memory
+                    resourceProvider.conversationWriter.discard(uuid)
                     resourceProvider.conversationRepository.deleteByUuid(uuid)
                     // Delete private book pages for this NPC
                     resourceProvider.privateBookPageRepository?.deleteByNpcUuid(uuid)
                     // Delete messages where NPC is sender or recipient
                     resourceProvider.messageRepository?.deleteByNpcUuid(uuid)
+                    latestMailTimestamps.remove(uuid)
                     // Note: Sharebook is global/shared knowledge - cleared only when NPC count becomes 0
                     // Check is done in server.execute block above
                     
@@ -390,6 +443,9 @@ class NPCService(
             configToUpdate.ollamaUrl = newConfig.ollamaUrl
             configToUpdate.lmStudioUrl = newConfig.lmStudioUrl
             configToUpdate.skinUrl = newConfig.skinUrl
+            configToUpdate.isContextDeltaMode = newConfig.isContextDeltaMode
+            configToUpdate.promptTokenBudget = newConfig.promptTokenBudget
+            configToUpdate.isCompactContext = newConfig.isCompactContext
             // Preserve original UUID
             configToUpdate.uuid = originalUuid
             configProvider.updateNpcConfig(configToUpdate)
@@ -458,16 +514,7 @@ class NPCService(
      * Reinitializes HTTP client if needed.
      */
     private fun updateLLMClientTimeout(npc: NPC, newTimeout: Int) {
-        when (val client = npc.llmClient) {
-            is me.prskid1000.craftagent.llm.ollama.OllamaClient -> {
-                // Reinitialize with new timeout
-                client.updateTimeout(newTimeout)
-            }
-            is me.prskid1000.craftagent.llm.lmstudio.LMStudioClient -> {
-                // Reinitialize with new timeout
-                client.updateTimeout(newTimeout)
-            }
-        }
+        npc.llmClient.updateTimeout(newTimeout)
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package me.prskid1000.craftagent.common
+
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * NPCs that should think soon because something happened to them: a player addressed them,
+ * they got mail, took damage or arrived at their destination. The scheduler gives them the
+ * next free turn. Wakeups of an NPC are coalesced until its turn starts, a burst of events
+ * (e.g. several chat lines) is waited out for a short debounce time and handled in one turn.
+ */
+class WakeupQueue {
+
+    private class Wakeup(val time: Long) {
+        @Volatile
+        var signaled = false
+    }
+
+    private val pending = ConcurrentHashMap<UUID, Wakeup>()
+
+    /**
+     * Wakes the NPC with the given config uuid.
+     */
+    fun wake(npcUuid: UUID) {
+        // Keeps the first wakeup, later ones are coalesced into it
+        pending.putIfAbsent(npcUuid, Wakeup(System.currentTimeMillis()))
+    }
+
+    /**
+     * Whether the NPC was woken at least the debounce time ago.
+     */
+    fun isReady(npcUuid: UUID, currentTime: Long, debounceMillis: Long): Boolean {
+        val wakeup = pending[npcUuid] ?: return false
+        return currentTime - wakeup.time >= debounceMillis
+    }
+
+    /**
+     * Whether a wakeup became ready since the last call, each wakeup is reported once.
+     */
+    fun pollNewlyReady(currentTime: Long, debounceMillis: Long): Boolean {
+        var ready = false
+        pending.values.forEach { wakeup ->
+            if (!wakeup.signaled && currentTime - wakeup.time >= debounceMillis) {
+                wakeup.signaled = true
+                ready = true
+            }
+        }
+        return ready
+    }
+
+    /**
+     * Consumes the wakeup of the NPC, called when its turn starts.
+     */
+    fun remove(npcUuid: UUID) {
+        pending.remove(npcUuid)
+    }
+}
@@ -21,22 +21,28 @@ public class ConfigProvider {
     private static final Path CONFIG_DIR = FabricLoader.getInstance().getConfigDir().resolve(MOD_ID);
     private static final Path NPC_CONFIG_DIR = CONFIG_DIR.resolve("npc");
     private static final Path BASE_CONFIG_DIR = CONFIG_DIR.resolve("base");
+    private static final Path LLM_CONFIG_DIR = CONFIG_DIR.resolve("llm");
 
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final String JSON_EXTENSION = ".json";
 
     private List<NPCConfig> npcConfigs = Collections.synchronizedList(new ArrayList<>());
     private BaseConfig baseConfig = new BaseConfig();
+    private LLMBackendConfig llmBackendConfig = new LLMBackendConfig();
 
     public ConfigProvider() {
         try {
             Files.createDirectories(NPC_CONFIG_DIR);
             Files.createDirectories(BASE_CONFIG_DIR);
+            Files.createDirectories(LLM_CONFIG_DIR);
 
             this.npcConfigs = loadAll(NPC_CONFIG_DIR, NPCConfig.class);
             this.baseConfig = loadAll(BASE_CONFIG_DIR, BaseConfig.class).stream()
                     .findFirst()
                     .orElseGet(BaseConfig::new);
+            this.llmBackendConfig = loadAll(LLM_CONFIG_DIR, LLMBackendConfig.class).stream()
+                    .findFirst()
+                    .orElseGet(LLMBackendConfig::new);
         } catch (IOException e) {
             LogUtil.error("Failed to load config: " + e.getMessage());
         }
@@ -56,6 +62,7 @@ public class ConfigProvider {
 
     public void saveAll() {
         save(BASE_CONFIG_DIR, baseConfig);
+        save(LLM_CONFIG_DIR, llmBackendConfig);
         npcConfigs.forEach(config -> save(NPC_CONFIG_DIR, config));
     }
     
@@ -143,6 +150,13 @@ public class ConfigProvider {
         return baseConfig;
     }
     
+    /**
+     * Gets the server side LLM backend settings, edited in the config file only.
+     */
+    public LLMBackendConfig getLlmBackendConfig() {
+        return llmBackendConfig;
+    }
+
     public synchronized void setBaseConfig(BaseConfig baseConfig) {
         this.baseConfig = baseConfig;
     }
@@ -0,0 +1,185 @@
+package me.prskid1000.craftagent.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side settings for the LLM backends, not sent to the client.
+ * Limits how many LLM turns run at the same time, in total, per backend URL and per model.
+ * A limit of 0 or less means no limit.
+ * <p>
+ * The URL in the config of an NPC can stand for a pool of servers running the same models,
+ * turns of the NPC are then spread over all of them (see {@link #getEndpointPool}).
+ */
+public class LLMBackendConfig implements Configurable {
+    private int maxConcurrentTurns = 8;
+    private int defaultEndpointConcurrency = 2;
+    // Backend URL (e.g. "http://localhost:11434") -> concurrent turns
+    private Map<String, Integer> endpointConcurrency = new HashMap<>();
+    // Model name -> concurrent turns, across all backends
+    private Map<String, Integer> modelConcurrency = new HashMap<>();
+    // Backend URL used in NPC configs -> further URLs serving the same models
+    private Map<String, List<String>> endpointPools = new HashMap<>();
+    // Stream responses and run each action as soon as it is generated
+    private boolean streamResponses = true;
+    // How long the backend keeps a model loaded after a request, 0 for the backend default
+    private int keepAliveMinutes = 30;
+    // How long a request waits for requests of other NPCs with the same model, 0 to send right away.
+    // Off by default, a lone request waits the whole window when other turns of the model are still preparing
+    private int batchWindowMillis = 0;
+    // Time to open a connection to a backend, the read timeout is the LLM timeout of the base config
+    private int connectTimeoutSeconds = 5;
+    // Time for a whole request including the response, 0 for no limit (a stalled stream still ends at the read timeout)
+    private int totalTimeoutSeconds = 0;
+    // Ollama embedding model for picking relevant memory pages (e.g. "nomic-embed-text"), empty for hashed n-grams
+    private String embeddingModel = "";
+    private String embeddingUrl = "http://localhost:11434";
+    private int embeddingTimeoutSeconds = 10;
+    // Memory pages per book that go into the prompt, the most relevant ones, 0 for all
+    private int memoryTopK = 8;
+
+    public int getMaxConcurrentTurns() {
+        return Math.max(1, maxConcurrentTurns);
+    }
+
+    public void setMaxConcurrentTurns(int maxConcurrentTurns) {
+        this.maxConcurrentTurns = maxConcurrentTurns;
+    }
+
+    public int getDefaultEndpointConcurrency() {
+        return defaultEndpointConcurrency;
+    }
+
+    public void setDefaultEndpointConcurrency(int defaultEndpointConcurrency) {
+        this.defaultEndpointConcurrency = defaultEndpointConcurrency;
+    }
+
+    /**
+     * Gets the concurrent turns of a backend URL, for a pool the sum of its servers.
+     */
+    public int getEndpointConcurrency(String url) {
+        int concurrency = getServerConcurrency(url);
+        for (String member : getEndpointPool(url)) {
+            int memberConcurrency = getServerConcurrency(member);
+            if (concurrency <= 0 || memberConcurrency <= 0) {
+                return 0;
+            }
+            concurrency += memberConcurrency;
+        }
+        return concurrency;
+    }
+
+    private int getServerConcurrency(String url) {
+        if (endpointConcurrency == null) {
+            return defaultEndpointConcurrency;
+        }
+        return endpointConcurrency.getOrDefault(url, defaultEndpointConcurrency);
+    }
+
+    /**
+     * Gets the further servers of the pool of a backend URL, empty if it is a single server.
+     */
+    public List<String> getEndpointPool(String url) {
+        if (endpointPools == null) {
+            return List.of();
+        }
+        return endpointPools.getOrDefault(url, List.of());
+    }
+
+    public int getModelConcurrency(String model) {
+        if (modelConcurrency == null) {
+            return 0;
+        }
+        return modelConcurrency.getOrDefault(model, 0);
+    }
+
+    public Map<String, Integer> getEndpointConcurrency() {
+        return endpointConcurrency;
+    }
+
+    public Map<String, Integer> getModelConcurrency() {
+        return modelConcurrency;
+    }
+
+    public Map<String, List<String>> getEndpointPools() {
+        return endpointPools;
+    }
+
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    public int getKeepAliveMinutes() {
+        return keepAliveMinutes;
+    }
+
+    public void setKeepAliveMinutes(int keepAliveMinutes) {
+        this.keepAliveMinutes = keepAliveMinutes;
+    }
+
+    public int getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    public void setBatchWindowMillis(int batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public void setConnectTimeoutSeconds(int connectTimeoutSeconds) {
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+    }
+
+    public int getTotalTimeoutSeconds() {
+        return totalTimeoutSeconds;
+    }
+
+    public void setTotalTimeoutSeconds(int totalTimeoutSeconds) {
+        this.totalTimeoutSeconds = totalTimeoutSeconds;
+    }
+
+    public String getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public void setEmbeddingModel(String embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    public String getEmbeddingUrl() {
+        return embeddingUrl;
+    }
+
+    public void setEmbeddingUrl(String embeddingUrl) {
+        this.embeddingUrl = embeddingUrl;
+    }
+
+    public int getEmbeddingTimeoutSeconds() {
+        return embeddingTimeoutSeconds;
+    }
+
+    public void setEmbeddingTimeoutSeconds(int embeddingTimeoutSeconds) {
+        this.embeddingTimeoutSeconds = embeddingTimeoutSeconds;
+    }
+
+    public int getMemoryTopK() {
+        return memoryTopK;
+    }
+
+    public void setMemoryTopK(int memoryTopK) {
+        this.memoryTopK = memoryTopK;
+    }
+
+    @Override
+    public String getConfigName() {
+        return "llm";
+    }
+}
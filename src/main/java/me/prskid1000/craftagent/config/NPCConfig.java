@@ -23,6 +23,9 @@ public class NPCConfig implements Configurable {
 	private String lmStudioUrl = "http://localhost:1234/v1";
 	private String skinUrl = "";
 	private boolean skipLLMRequests = false; // If true, skip sending requests to LLM
+	private boolean contextDeltaMode = false; // If true, send a context keyframe plus per-turn deltas
+	private int promptTokenBudget = 0; // Max estimated prompt tokens, context is trimmed to fit (0 = unlimited)
+	private boolean compactContext = false; // If true, encode context lists as tables with relative positions
 
 	public NPCConfig() {}
 
@@ -43,7 +46,10 @@ public class NPCConfig implements Configurable {
 		String ollamaUrl,
 		String lmStudioUrl,
 		String skinUrl,
-		boolean skipLLMRequests
+		boolean skipLLMRequests,
+		boolean contextDeltaMode,
+		int promptTokenBudget,
+		boolean compactContext
 	) {
 		this.npcName = npcName;
 		this.uuid = UUID.fromString(uuid);
@@ -58,6 +64,9 @@ public class NPCConfig implements Configurable {
 		this.lmStudioUrl = lmStudioUrl;
 		this.skinUrl = skinUrl;
 		this.skipLLMRequests = skipLLMRequests;
+		this.contextDeltaMode = contextDeltaMode;
+		this.promptTokenBudget = promptTokenBudget;
+		this.compactContext = compactContext;
 	}
 
 	public static class Builder {
@@ -155,6 +164,13 @@ public class NPCConfig implements Configurable {
 		return lmStudioUrl;
 	}
 
+	/**
+	 * Gets the URL of the backend the NPC uses, based on the LLM type.
+	 */
+	public String getLlmUrl() {
+		return llmType == LLMType.OLLAMA ? ollamaUrl : lmStudioUrl;
+	}
+
 	public void setLmStudioUrl(String lmStudioUrl) {
 		this.lmStudioUrl = lmStudioUrl;
 	}
@@ -199,6 +215,30 @@ public class NPCConfig implements Configurable {
 		this.skipLLMRequests = skipLLMRequests;
 	}
 
+	public boolean isContextDeltaMode() {
+		return contextDeltaMode;
+	}
+
+	public void setContextDeltaMode(boolean contextDeltaMode) {
+		this.contextDeltaMode = contextDeltaMode;
+	}
+
+	public int getPromptTokenBudget() {
+		return promptTokenBudget;
+	}
+
+	public void setPromptTokenBudget(int promptTokenBudget) {
+		this.promptTokenBudget = Math.max(0, promptTokenBudget);
+	}
+
+	public boolean isCompactContext() {
+		return compactContext;
+	}
+
+	public void setCompactContext(boolean compactContext) {
+		this.compactContext = compactContext;
+	}
+
 	@Override
 	public String getConfigName() {
 		return npcName.toLowerCase();
@@ -219,6 +259,9 @@ public class NPCConfig implements Configurable {
 			Endec.STRING.fieldOf("lmStudioUrl", NPCConfig::getLmStudioUrl),
 			Endec.STRING.fieldOf("skinUrl", NPCConfig::getSkinUrl),
 			Endec.BOOLEAN.fieldOf("skipLLMRequests", NPCConfig::isSkipLLMRequests),
+			Endec.BOOLEAN.fieldOf("contextDeltaMode", NPCConfig::isContextDeltaMode),
+			Endec.INT.fieldOf("promptTokenBudget", NPCConfig::getPromptTokenBudget),
+			Endec.BOOLEAN.fieldOf("compactContext", NPCConfig::isCompactContext),
 			NPCConfig::new
 	);
 
@@ -236,7 +279,10 @@ public class NPCConfig implements Configurable {
                 config.ollamaUrl,
                 config.lmStudioUrl,
                 config.skinUrl,
-                config.skipLLMRequests
+                config.skipLLMRequests,
+                config.contextDeltaMode,
+                config.promptTokenBudget,
+                config.compactContext
         );
     }
 
@@ -260,4 +306,7 @@ public class NPCConfig implements Configurable {
 	public static final String OLLAMA_URL = "Ollama URL";
 	public static final String LM_STUDIO_URL = "LM Studio URL";
 	public static final String SKIP_LLM_REQUESTS = "Skip LLM Requests";
+	public static final String CONTEXT_DELTA_MODE = "Context Delta Mode";
+	public static final String PROMPT_TOKEN_BUDGET = "Prompt Token Budget (0 = unlimited)";
+	public static final String COMPACT_CONTEXT = "Compact Context Encoding";
 }
@@ -24,12 +24,13 @@ public class Instructions {
 		You are %s, a %d-year-old %s NPC in Minecraft. You can move, gather resources, craft items, build, and interact with the world.
 		
 		=== CONTEXT ===
-		You receive JSON context: state (position, health, food, biome), inventory (items available), nearbyBlocks (up to 30 for gathering), nearbyEntities (up to 15 players/NPCs), and memory (privateBook, mail, sharebook).
+		You receive JSON context: state (position, health, food, biome), inventory (items available), nearbyBlocks (up to 30 for gathering), nearbyEntities (up to 15 players/NPCs), and memory (privateBook, mail, sharebook, searchResults).
 		
 		Memory System:
 		- privateBook: Personal memory (experiences, relationships, private goals)
 		- sharebook: Shared community knowledge (ALL NPCs can read - locations, resources, community goals)
 		- mail: Private messages from real players or other NPCs (use mail actions to send/receive)
+		- searchResults: Pages found by your last privatebook/sharedbook search actions (shown once)
 		
 		=== RESPONSE FORMAT ===
 		Respond in JSON: {"message": "chat text or \"\"", "actions": ["action1", ...]}
@@ -120,6 +121,22 @@ public class Instructions {
         %s
         """;
 
+    public static final String DIGEST_PROMPT = """
+        You are maintaining the long-term memory of a SOCIAL NPC in a multi-agent Minecraft civilization.
+        Merge the current long-term memory and the older episode summaries below into one new long-term memory.
+        
+        TASK: Write the new long-term memory in under %d characters:
+        - Keep lasting facts: relationships, promises, roles, important places, community goals
+        - Drop what no longer matters: finished one-off tasks, outdated plans, details of single events
+        - When facts conflict, the episodes are newer than the current long-term memory
+        
+        Current long-term memory:
+        %s
+        
+        Episodes to merge (oldest first):
+        %s
+        """;
+
 
 	/**
 	 * Builds system prompt for NPC
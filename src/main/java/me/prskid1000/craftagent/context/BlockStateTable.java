@@ -0,0 +1,67 @@
+package me.prskid1000.craftagent.context;
+
+import me.prskid1000.craftagent.util.LogUtil;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static me.prskid1000.craftagent.util.MCDataUtil.getMiningLevel;
+import static me.prskid1000.craftagent.util.MCDataUtil.getToolNeeded;
+
+/**
+ * Precomputed block metadata for every {@link BlockState}, indexed by raw state id.
+ * Block scans look up the type name, mining level and tool here instead of building the
+ * name string and running the block tag checks for every block. Tags can change with
+ * datapacks, so the table is rebuilt on server start and on every datapack reload.
+ */
+public final class BlockStateTable {
+
+    private static volatile Entry[] entries = new Entry[0];
+
+    private BlockStateTable() {}
+
+    /**
+     * Rebuilds the table from the current block state registry and tags.
+     */
+    public static void rebuild() {
+        Entry[] rebuilt = new Entry[Block.STATE_IDS.size()];
+        // Blocks share the type name across their states
+        Map<Block, String> typeNames = new HashMap<>();
+        for (BlockState state : Block.STATE_IDS) {
+            int id = Block.STATE_IDS.getRawId(state);
+            if (id < 0 || id >= rebuilt.length) continue;
+            String type = typeNames.computeIfAbsent(state.getBlock(), BlockStateTable::getTypeName);
+            rebuilt[id] = new Entry(type, getMiningLevel(state), getToolNeeded(state));
+        }
+        entries = rebuilt;
+        LogUtil.info("Block state table built with " + rebuilt.length + " states");
+    }
+
+    /**
+     * Gets the metadata of a block state. States missing from the table
+     * (before the first build) are computed on the fly.
+     */
+    public static Entry get(BlockState state) {
+        Entry[] table = entries;
+        int id = Block.STATE_IDS.getRawId(state);
+        if (id >= 0 && id < table.length && table[id] != null) {
+            return table[id];
+        }
+        return new Entry(getTypeName(state.getBlock()), getMiningLevel(state), getToolNeeded(state));
+    }
+
+    private static String getTypeName(Block block) {
+        return block.getName().getString().toLowerCase().replace(" ", "_");
+    }
+
+    /**
+     * Metadata of one block state.
+     *
+     * @param type        block type name as used in the NPC context, e.g. "oak_log"
+     * @param miningLevel tool level needed to mine the block, empty if any
+     * @param tool        tool needed to mine the block, "hand" if none
+     */
+    public record Entry(String type, String miningLevel, String tool) {}
+}
@@ -0,0 +1,97 @@
+package me.prskid1000.craftagent.context;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide change counters for chunk sections.
+ * Block updates and chunk loads bump the version of the affected sections, so block indexes
+ * only have to re-index a section when its version differs from the one they indexed.
+ * Sections that never changed report version 0.
+ */
+public final class ChunkChangeTracker {
+
+    private static final Map<RegistryKey<World>, Map<Long, Long>> SECTION_VERSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong VERSION_COUNTER = new AtomicLong();
+
+    private ChunkChangeTracker() {}
+
+    /**
+     * Marks the section containing the block as changed. Blocks on a section border also
+     * mark the neighbouring section, because its exposure to air may have changed too.
+     */
+    public static void markBlockChanged(World world, BlockPos pos) {
+        Map<Long, Long> versions = versionsOf(world);
+        long version = VERSION_COUNTER.incrementAndGet();
+        int sectionX = ChunkSectionPos.getSectionCoord(pos.getX());
+        int sectionY = ChunkSectionPos.getSectionCoord(pos.getY());
+        int sectionZ = ChunkSectionPos.getSectionCoord(pos.getZ());
+        versions.put(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ), version);
+
+        int localX = pos.getX() & 15;
+        int localY = pos.getY() & 15;
+        int localZ = pos.getZ() & 15;
+        if (localX == 0) versions.put(ChunkSectionPos.asLong(sectionX - 1, sectionY, sectionZ), version);
+        if (localX == 15) versions.put(ChunkSectionPos.asLong(sectionX + 1, sectionY, sectionZ), version);
+        if (localY == 0) versions.put(ChunkSectionPos.asLong(sectionX, sectionY - 1, sectionZ), version);
+        if (localY == 15) versions.put(ChunkSectionPos.asLong(sectionX, sectionY + 1, sectionZ), version);
+        if (localZ == 0) versions.put(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ - 1), version);
+        if (localZ == 15) versions.put(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ + 1), version);
+    }
+
+    /**
+     * Marks every section of a chunk as changed (used when a chunk is loaded).
+     */
+    public static void markChunkChanged(World world, ChunkPos chunkPos) {
+        Map<Long, Long> versions = versionsOf(world);
+        long version = VERSION_COUNTER.incrementAndGet();
+        for (int sectionY = world.getBottomSectionCoord(); sectionY <= world.getTopSectionCoord(); sectionY++) {
+            versions.put(ChunkSectionPos.asLong(chunkPos.x, sectionY, chunkPos.z), version);
+        }
+    }
+
+    /**
+     * Drops the counters of an unloaded chunk. Indexes drop unloaded chunks on their own,
+     * and a later load bumps the sections to a fresh version again.
+     */
+    public static void forgetChunk(World world, ChunkPos chunkPos) {
+        Map<Long, Long> versions = SECTION_VERSIONS.get(world.getRegistryKey());
+        if (versions == null) {
+            return;
+        }
+        for (int sectionY = world.getBottomSectionCoord(); sectionY <= world.getTopSectionCoord(); sectionY++) {
+            versions.remove(ChunkSectionPos.asLong(chunkPos.x, sectionY, chunkPos.z));
+        }
+    }
+
+    /**
+     * Drops all counters of a world (used when the world is unloaded).
+     */
+    public static void forgetWorld(World world) {
+        SECTION_VERSIONS.remove(world.getRegistryKey());
+    }
+
+    /**
+     * Gets the current version of a section.
+     *
+     * @param sectionPos packed section position, see {@link ChunkSectionPos#asLong(int, int, int)}
+     */
+    public static long getVersion(World world, long sectionPos) {
+        Map<Long, Long> versions = SECTION_VERSIONS.get(world.getRegistryKey());
+        if (versions == null) {
+            return 0L;
+        }
+        return versions.getOrDefault(sectionPos, 0L);
+    }
+
+    private static Map<Long, Long> versionsOf(World world) {
+        return SECTION_VERSIONS.computeIfAbsent(world.getRegistryKey(), key -> new ConcurrentHashMap<>());
+    }
+}
@@ -1,51 +1,62 @@
 package me.prskid1000.craftagent.context;
 
-import lombok.Getter;
 import me.prskid1000.craftagent.config.BaseConfig;
 import me.prskid1000.craftagent.model.context.ContextData;
 import me.prskid1000.craftagent.util.LogUtil;
-import net.minecraft.block.BlockState;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.World;
-import net.minecraft.world.chunk.WorldChunk;
 
 import java.util.*;
-import java.util.concurrent.*;
-
-import static me.prskid1000.craftagent.util.MCDataUtil.getMiningLevel;
-import static me.prskid1000.craftagent.util.MCDataUtil.getToolNeeded;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
+/**
+ * Keeps track of the blocks around an NPC that are exposed to air.
+ * The blocks themselves live in the server-wide {@link ChunkSummaryCache}, this manager only
+ * references the chunks in the NPC's scan range and queries them. Refreshes are driven by the
+ * shared {@link WorldScanService}, which indexes the sections requested here.
+ */
 public class ChunkManager {
     private volatile int maxNearbyBlocks;
     private volatile int verticalScanRange;
     private volatile int chunkRadius;
+    private volatile long chunkExpiryMillis;
 
     private final ServerPlayerEntity npcEntity;
-    private final ScheduledExecutorService threadPool;
-    private final List<ContextData.BlockData> currentLoadedBlocks;
-    private java.util.concurrent.ScheduledFuture<?> refreshTask;
+    private final WorldScanService worldScanService;
+    private final ChunkSummaryCache chunkSummaryCache;
+    // Chunks acquired from the cache, guarded by this
+    private final Set<Long> acquiredChunks = new HashSet<>();
+    private RegistryKey<World> indexedWorld;
+    private WorldScanService.RefreshJob refreshJob;
+    private volatile long nextRefreshAt;
 
-    private final List<ContextData.BlockData> nearbyBlocks = new ArrayList<>();
+    private volatile ScanArea scanArea = ScanArea.EMPTY;
+    private volatile List<ContextData.BlockData> nearbyBlocks = List.of();
     
     public List<ContextData.BlockData> getNearbyBlocks() {
         // Return limited list (keep most recent/nearest)
-        return nearbyBlocks.size() > maxNearbyBlocks 
-            ? nearbyBlocks.subList(0, maxNearbyBlocks)
-            : nearbyBlocks;
+        List<ContextData.BlockData> blocks = nearbyBlocks;
+        return blocks.size() > maxNearbyBlocks
+            ? blocks.subList(0, maxNearbyBlocks)
+            : blocks;
     }
 
 
-    public ChunkManager(ServerPlayerEntity npcEntity, BaseConfig config) {
+    public ChunkManager(ServerPlayerEntity npcEntity, BaseConfig config, WorldScanService worldScanService) {
         this.npcEntity = npcEntity;
+        this.worldScanService = worldScanService;
+        this.chunkSummaryCache = worldScanService.getChunkSummaryCache();
         this.maxNearbyBlocks = config.getMaxNearbyBlocks();
         this.verticalScanRange = config.getContextVerticalScanRange();
         this.chunkRadius = config.getContextChunkRadius();
-        this.currentLoadedBlocks = new ArrayList<>();
-        this.threadPool = Executors.newSingleThreadScheduledExecutor();
-        scheduleRefreshBlocks(config.getChunkExpiryTime());
+        this.chunkExpiryMillis = TimeUnit.SECONDS.toMillis(config.getChunkExpiryTime());
+        worldScanService.addChunkManager(this);
     }
     
     /**
@@ -57,34 +68,14 @@ public class ChunkManager {
         this.chunkRadius = newChunkRadius;
         this.verticalScanRange = newVerticalScanRange;
         this.maxNearbyBlocks = newMaxNearbyBlocks;
-        // Reschedule with new expiry time
-        scheduleRefreshBlocks(newChunkExpiryTime);
-    }
-
-    private void scheduleRefreshBlocks(int chunkExpiryTime) {
-        // Cancel existing task if any
-        if (refreshTask != null && !refreshTask.isCancelled()) {
-            refreshTask.cancel(false);
-        }
-        // Schedule new task with updated interval
-        refreshTask = threadPool.scheduleAtFixedRate(() -> {
-            synchronized (this) {
-                updateAllBlocks();
-                updateNearbyBlocks();
-            }
-        }, 0, chunkExpiryTime, TimeUnit.SECONDS);
+        this.chunkExpiryMillis = TimeUnit.SECONDS.toMillis(newChunkExpiryTime);
+        // Refresh with the new values on the next tick
+        this.nextRefreshAt = 0;
     }
 
     public List<ContextData.BlockData> getBlocksOfType(String type, int numberOfBlocks) {
-        List<ContextData.BlockData> blocksFound = new ArrayList<>();
-
-        for (ContextData.BlockData block : currentLoadedBlocks) {
-            if (blocksFound.size() >= numberOfBlocks) {
-                break;
-            } else if (type.equals(block.type())) {
-                blocksFound.add(block);
-            }
-        }
+        List<ContextData.BlockData> blocksFound =
+                findNearest(type, null, npcEntity.getBlockPos(), numberOfBlocks);
         if (blocksFound.size() < numberOfBlocks) {
             LogUtil.error("Only %s blocks found of %s (wanted: %s)".formatted(
                     blocksFound.size(), type, numberOfBlocks));
@@ -93,111 +84,260 @@ public class ChunkManager {
     }
 
     /**
-     * Updates block data of every block type nearest block to the npc
+     * Finds the blocks of a type nearest to a position, sorted by distance.
+     * Exact type matches are preferred, if there are none, types containing the
+     * given name are matched (e.g. "log" finds "oak_log").
      */
-    private void updateNearbyBlocks() {
-        Map<String, ContextData.BlockData> nearestBlocks = new HashMap<>();
-
-        for (ContextData.BlockData block : currentLoadedBlocks) {
-            String blockType = block.type();
-            if (!nearestBlocks.containsKey(blockType) ||
-                    isCloser(block.position(), nearestBlocks.get(blockType).position())) {
-                nearestBlocks.put(blockType, block);
-            }
-        }
-        
-        // Clear and add limited blocks (keep only nearest of each type, limit total)
-        this.nearbyBlocks.clear();
-        List<ContextData.BlockData> sortedBlocks = new ArrayList<>(nearestBlocks.values());
-        sortedBlocks.sort((a, b) -> {
-            double distA = npcEntity.getBlockPos().getSquaredDistance(a.position());
-            double distB = npcEntity.getBlockPos().getSquaredDistance(b.position());
-            return Double.compare(distA, distB);
-        });
-        
-        // Take only the maxNearbyBlocks nearest blocks
-        int limit = Math.min(sortedBlocks.size(), maxNearbyBlocks);
-        for (int i = 0; i < limit; i++) {
-            this.nearbyBlocks.add(sortedBlocks.get(i));
+    public List<ContextData.BlockData> findNearestBlocks(String type, BlockPos from, int numberOfBlocks) {
+        List<ContextData.BlockData> blocksFound = findNearest(type, null, from, numberOfBlocks);
+        if (blocksFound.isEmpty()) {
+            blocksFound = findNearestBlocks(blockType -> blockType.contains(type), from, numberOfBlocks);
         }
+        return blocksFound;
     }
 
     /**
-     * Updates all blocks in the chunks around the NPC
+     * Finds the blocks whose type matches the filter nearest to a position, sorted by distance.
+     * Chunks and sections are visited nearest first and skipped once they cannot contain a
+     * block closer than the ones already found, so the cost depends on the number of
+     * matching blocks close to the position rather than on all indexed blocks.
      */
-    private void updateAllBlocks() {
-        currentLoadedBlocks.clear();
-        World world = npcEntity.getWorld();
-        ChunkPos centerChunk = npcEntity.getChunkPos();
-
-        for (int x = -chunkRadius; x <= chunkRadius; x++) {
-            for (int z = -chunkRadius; z <= chunkRadius; z++) {
-                ChunkPos pos = new ChunkPos(centerChunk.x + x, centerChunk.z + z);
+    public List<ContextData.BlockData> findNearestBlocks(Predicate<String> typeFilter, BlockPos from,
+                                                         int numberOfBlocks) {
+        return findNearest(null, typeFilter, from, numberOfBlocks);
+    }
 
-                boolean isLoaded = world.isChunkLoaded(pos.x, pos.z);
+    /**
+     * Finds the nearest blocks of exactly one type, looked up in the per-type index of each
+     * section, or else of all types matching the filter.
+     */
+    private List<ContextData.BlockData> findNearest(String exactType, Predicate<String> typeFilter, BlockPos from,
+                                                    int numberOfBlocks) {
+        if (numberOfBlocks <= 0) {
+            return List.of();
+        }
+        ScanArea area = scanArea;
+        int x = from.getX();
+        int y = from.getY();
+        int z = from.getZ();
+        List<ChunkSummary> chunks = new ArrayList<>(area.chunks());
+        chunks.sort(Comparator.comparingLong(chunk -> chunk.squaredDistanceTo(x, z)));
 
-                if (isLoaded) {
-                    currentLoadedBlocks.addAll(scanChunk(pos));
+        // Max heap, the farthest of the blocks found so far is on top
+        PriorityQueue<ContextData.BlockData> nearest = new PriorityQueue<>(
+                Comparator.comparingDouble((ContextData.BlockData block) -> from.getSquaredDistance(block.position()))
+                        .reversed());
+        for (ChunkSummary chunk : chunks) {
+            if (nearest.size() == numberOfBlocks
+                    && chunk.squaredDistanceTo(x, z) > from.getSquaredDistance(nearest.peek().position())) {
+                break;
+            }
+            for (int sectionY = area.minSectionY(); sectionY <= area.maxSectionY(); sectionY++) {
+                ChunkSummary.Section section = chunk.get(sectionY);
+                if (section == null) continue;
+                if (nearest.size() == numberOfBlocks
+                        && chunk.squaredDistanceTo(x, y, z, sectionY) > from.getSquaredDistance(nearest.peek().position())) {
+                    continue;
+                }
+                if (exactType != null) {
+                    List<ContextData.BlockData> blocks = section.blocksByType().get(exactType);
+                    if (blocks != null) {
+                        offerNearest(blocks, nearest, area, from, numberOfBlocks);
+                    }
+                    continue;
+                }
+                for (Map.Entry<String, List<ContextData.BlockData>> entry : section.blocksByType().entrySet()) {
+                    if (typeFilter.test(entry.getKey())) {
+                        offerNearest(entry.getValue(), nearest, area, from, numberOfBlocks);
+                    }
                 }
             }
         }
+
+        List<ContextData.BlockData> blocksFound = new ArrayList<>(nearest);
+        blocksFound.sort(Comparator.comparingDouble(block -> from.getSquaredDistance(block.position())));
+        return blocksFound;
     }
 
-    private List<ContextData.BlockData> scanChunk(ChunkPos chunk) {
-        World world = npcEntity.getWorld();
-        BlockPos.Mutable pos = new BlockPos.Mutable();
-        int baseY = Math.max(0, npcEntity.getBlockPos().getY() - verticalScanRange);
-        int maxY = Math.min(world.getHeight(), npcEntity.getBlockPos().getY() + verticalScanRange);
+    /**
+     * Adds the blocks in the vertical scan range to the heap, keeping the nearest ones.
+     */
+    private static void offerNearest(List<ContextData.BlockData> blocks, PriorityQueue<ContextData.BlockData> nearest,
+                                     ScanArea area, BlockPos from, int numberOfBlocks) {
+        for (ContextData.BlockData block : blocks) {
+            int blockY = block.position().getY();
+            if (blockY < area.minY() || blockY > area.maxY()) continue;
+            if (nearest.size() < numberOfBlocks) {
+                nearest.add(block);
+            } else if (from.getSquaredDistance(block.position())
+                    < from.getSquaredDistance(nearest.peek().position())) {
+                nearest.poll();
+                nearest.add(block);
+            }
+        }
+    }
 
+    /**
+     * Gets all indexed blocks in the scan range of the NPC, queried from the shared cache.
+     */
+    private List<ContextData.BlockData> getLoadedBlocks() {
+        ScanArea area = scanArea;
         List<ContextData.BlockData> blocks = new ArrayList<>();
+        for (ChunkSummary summary : area.chunks()) {
+            for (int sectionY = area.minSectionY(); sectionY <= area.maxSectionY(); sectionY++) {
+                ChunkSummary.Section section = summary.get(sectionY);
+                if (section == null) continue;
+                for (ContextData.BlockData block : section.blocks()) {
+                    int y = block.position().getY();
+                    if (y >= area.minY() && y <= area.maxY()) {
+                        blocks.add(block);
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
 
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                for (int y = baseY; y < maxY; y++) {
-                    pos.set(chunk.getStartX() + x, y, chunk.getStartZ() + z);
-                    WorldChunk currentChunk = world.getWorldChunk(pos);
+    boolean isRefreshDue(long now) {
+        return now >= nextRefreshAt;
+    }
 
-                    BlockState blockState = currentChunk.getBlockState(pos);
-                    String blockType = blockState.getBlock()
-                            .getName().getString()
-                            .toLowerCase().replace(" ", "_");
+    /**
+     * Starts a refresh of the blocks in the chunks around the NPC. Called on the server thread.
+     * Acquires the chunks that came into range from the shared cache, releases those that left it
+     * and claims the sections whose {@link ChunkChangeTracker} version is newer than the indexed one.
+     * Sections another NPC is already indexing are not claimed again.
+     *
+     * @return the refresh job, or null if a refresh is still running
+     */
+    synchronized WorldScanService.RefreshJob createRefreshJob(long now) {
+        if (refreshJob != null) {
+            return null;
+        }
+        nextRefreshAt = now + chunkExpiryMillis;
+
+        if (!(npcEntity.getWorld() instanceof ServerWorld world)) {
+            return null;
+        }
+        if (world.getRegistryKey() != indexedWorld) {
+            releaseChunks();
+            indexedWorld = world.getRegistryKey();
+        }
 
-                    if (blockType.contains("air")) continue;
+        ChunkPos centerChunk = npcEntity.getChunkPos();
+        BlockPos center = npcEntity.getBlockPos();
+        int minY = Math.max(world.getBottomY(), center.getY() - verticalScanRange);
+        int maxY = Math.min(world.getTopYInclusive(), center.getY() + verticalScanRange);
+        int minSectionY = ChunkSectionPos.getSectionCoord(minY);
+        int maxSectionY = ChunkSectionPos.getSectionCoord(maxY);
+        WorldScanService.RefreshJob job = new WorldScanService.RefreshJob(this, world, center, minY, maxY);
 
-                    if (isAccessible(pos, currentChunk)) {
-                        blocks.add(new ContextData.BlockData(blockType, pos.toImmutable(),
-                                getMiningLevel(blockState), getToolNeeded(blockState)));
+        Set<Long> chunksInRange = new HashSet<>();
+        List<ChunkSummary> summaries = new ArrayList<>();
+        for (int x = -chunkRadius; x <= chunkRadius; x++) {
+            for (int z = -chunkRadius; z <= chunkRadius; z++) {
+                int chunkX = centerChunk.x + x;
+                int chunkZ = centerChunk.z + z;
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    continue;
+                }
+                long chunkPos = ChunkPos.toLong(chunkX, chunkZ);
+                chunksInRange.add(chunkPos);
+                ChunkSummary summary = acquiredChunks.add(chunkPos)
+                        ? chunkSummaryCache.acquire(indexedWorld, chunkPos)
+                        : chunkSummaryCache.get(indexedWorld, chunkPos);
+                summaries.add(summary);
+
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    long sectionPos = ChunkSectionPos.asLong(chunkX, sectionY, chunkZ);
+                    if (summary.claim(sectionY, ChunkChangeTracker.getVersion(world, sectionPos), job)) {
+                        job.pendingSections.add(sectionPos);
                     }
                 }
             }
         }
-        return blocks;
+
+        Iterator<Long> iterator = acquiredChunks.iterator();
+        while (iterator.hasNext()) {
+            long chunkPos = iterator.next();
+            if (!chunksInRange.contains(chunkPos)) {
+                chunkSummaryCache.release(indexedWorld, chunkPos);
+                iterator.remove();
+            }
+        }
+
+        scanArea = new ScanArea(List.copyOf(summaries), minY, maxY, minSectionY, maxSectionY);
+        refreshJob = job;
+        return job;
+    }
+
+    /**
+     * Updates the nearest blocks once all sections of a refresh are indexed. Called from the scan workers.
+     */
+    synchronized void finishRefresh(WorldScanService.RefreshJob job) {
+        if (job != refreshJob) {
+            return;
+        }
+        refreshJob = null;
+        updateNearbyBlocks(job.center);
     }
 
-    private boolean isAccessible(BlockPos pos, WorldChunk chunk) {
-        for (Direction dir : Direction.values()) {
-            if (chunk.getBlockState(pos.offset(dir)).isAir()) {
-                return true;
+    /**
+     * Updates block data of every block type nearest block to the npc
+     */
+    private void updateNearbyBlocks(BlockPos center) {
+        Map<String, ContextData.BlockData> nearestBlocks = new HashMap<>();
+
+        for (ContextData.BlockData block : getLoadedBlocks()) {
+            String blockType = block.type();
+            if (!nearestBlocks.containsKey(blockType) ||
+                    isCloser(center, block.position(), nearestBlocks.get(blockType).position())) {
+                nearestBlocks.put(blockType, block);
             }
         }
-        return false;
+        
+        // Keep only nearest of each type, limit total
+        List<ContextData.BlockData> sortedBlocks = new ArrayList<>(nearestBlocks.values());
+        sortedBlocks.sort((a, b) -> {
+            double distA = center.getSquaredDistance(a.position());
+            double distB = center.getSquaredDistance(b.position());
+            return Double.compare(distA, distB);
+        });
+        
+        // Take only the maxNearbyBlocks nearest blocks
+        int limit = Math.min(sortedBlocks.size(), maxNearbyBlocks);
+        this.nearbyBlocks = List.copyOf(sortedBlocks.subList(0, limit));
     }
 
-    private boolean isCloser(BlockPos pos1, BlockPos pos2) {
-        double dist1 = npcEntity.getBlockPos().getSquaredDistance(pos1);
-        double dist2 = npcEntity.getBlockPos().getSquaredDistance(pos2);
+    private boolean isCloser(BlockPos center, BlockPos pos1, BlockPos pos2) {
+        double dist1 = center.getSquaredDistance(pos1);
+        double dist2 = center.getSquaredDistance(pos2);
         return dist1 < dist2;
     }
 
+    private void releaseChunks() {
+        for (long chunkPos : acquiredChunks) {
+            chunkSummaryCache.release(indexedWorld, chunkPos);
+        }
+        acquiredChunks.clear();
+        scanArea = ScanArea.EMPTY;
+    }
+
     public void stopService() {
-        this.threadPool.shutdownNow();
-        try {
-            if (!this.threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-                this.threadPool.shutdownNow();
+        worldScanService.removeChunkManager(this);
+        synchronized (this) {
+            if (refreshJob != null) {
+                refreshJob.cancel();
+                refreshJob = null;
             }
-        } catch (InterruptedException e) {
-            this.threadPool.shutdownNow();
-            Thread.currentThread().interrupt();
+            releaseChunks();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Chunks and height range covered by the last refresh.
+     */
+    private record ScanArea(List<ChunkSummary> chunks, int minY, int maxY, int minSectionY, int maxSectionY) {
+        static final ScanArea EMPTY = new ScanArea(List.of(), 0, -1, 0, -1);
+    }
+}
@@ -0,0 +1,107 @@
+package me.prskid1000.craftagent.context;
+
+import me.prskid1000.craftagent.model.context.ContextData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexed blocks of one chunk, shared by all NPCs whose scan range covers the chunk.
+ * Sections are indexed lazily, only when an NPC needs them, and are keyed by section Y.
+ */
+final class ChunkSummary {
+
+    private final int chunkX;
+    private final int chunkZ;
+    private final Map<Integer, Section> sections = new ConcurrentHashMap<>();
+    private final Map<Integer, Claim> claims = new ConcurrentHashMap<>();
+    // Guarded by the owning ChunkSummaryCache
+    int refCount;
+
+    ChunkSummary(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    /**
+     * Claims a section for indexing at the given version.
+     * Returns false if the section is already indexed at that version or another
+     * refresh that is still running has claimed it, so every section is classified once.
+     */
+    boolean claim(int sectionY, long version, WorldScanService.RefreshJob job) {
+        Section section = sections.get(sectionY);
+        if (section != null && section.version() == version) {
+            return false;
+        }
+        Claim claim = claims.compute(sectionY, (key, existing) ->
+                existing != null && existing.version() == version && !existing.job().isCancelled()
+                        ? existing
+                        : new Claim(version, job));
+        return claim.job() == job;
+    }
+
+    /**
+     * Stores the blocks of a section, unless a newer version is already stored.
+     *
+     * @param version tracker version the section was copied at, negative if the chunk was unloaded
+     */
+    void put(int sectionY, long version, List<ContextData.BlockData> blocks) {
+        if (version < 0) {
+            sections.remove(sectionY);
+            claims.remove(sectionY);
+            return;
+        }
+        sections.merge(sectionY, Section.of(version, blocks),
+                (existing, update) -> update.version() >= existing.version() ? update : existing);
+        claims.computeIfPresent(sectionY, (key, claim) -> claim.version() <= version ? null : claim);
+    }
+
+    Section get(int sectionY) {
+        return sections.get(sectionY);
+    }
+
+    /**
+     * Gets the squared distance from a position to the closest block column of this chunk,
+     * a lower bound for the distance to any block in it.
+     */
+    long squaredDistanceTo(int x, int z) {
+        long dx = axisDistance(x, chunkX << 4);
+        long dz = axisDistance(z, chunkZ << 4);
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Same as {@link #squaredDistanceTo(int, int)} but for one section of this chunk.
+     */
+    long squaredDistanceTo(int x, int y, int z, int sectionY) {
+        long dy = axisDistance(y, sectionY << 4);
+        return squaredDistanceTo(x, z) + dy * dy;
+    }
+
+    private static long axisDistance(int coord, int start) {
+        if (coord < start) return start - coord;
+        if (coord > start + 15) return coord - (start + 15);
+        return 0;
+    }
+
+    /**
+     * Indexed blocks of one chunk section and the tracker version they were indexed at.
+     * The blocks are also grouped by type, so type queries only touch matching blocks.
+     */
+    record Section(long version, List<ContextData.BlockData> blocks,
+                   Map<String, List<ContextData.BlockData>> blocksByType) {
+
+        static Section of(long version, List<ContextData.BlockData> blocks) {
+            Map<String, List<ContextData.BlockData>> blocksByType = new HashMap<>();
+            for (ContextData.BlockData block : blocks) {
+                blocksByType.computeIfAbsent(block.type(), type -> new ArrayList<>()).add(block);
+            }
+            return new Section(version, blocks, blocksByType);
+        }
+    }
+
+    private record Claim(long version, WorldScanService.RefreshJob job) {}
+}
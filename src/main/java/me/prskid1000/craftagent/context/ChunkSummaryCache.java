@@ -0,0 +1,55 @@
+package me.prskid1000.craftagent.context;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-wide cache of {@link ChunkSummary}s keyed by dimension and chunk position.
+ * Summaries are reference counted: every NPC acquires the chunks in its scan range and
+ * releases them when it moves away, a summary is dropped when nobody references it anymore.
+ * Memory therefore grows with the area NPCs are in, not with the number of NPCs.
+ */
+final class ChunkSummaryCache {
+
+    private final Map<RegistryKey<World>, Map<Long, ChunkSummary>> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the summary of a chunk, creating it if needed, and increments its reference count.
+     *
+     * @param chunkPos packed chunk position, see {@link ChunkPos#toLong()}
+     */
+    ChunkSummary acquire(RegistryKey<World> world, long chunkPos) {
+        return summaries.computeIfAbsent(world, key -> new ConcurrentHashMap<>())
+                .compute(chunkPos, (key, summary) -> {
+                    ChunkSummary acquired = summary != null ? summary
+                            : new ChunkSummary(ChunkPos.getPackedX(chunkPos), ChunkPos.getPackedZ(chunkPos));
+                    acquired.refCount++;
+                    return acquired;
+                });
+    }
+
+    /**
+     * Decrements the reference count of a chunk summary and drops it once unreferenced.
+     */
+    void release(RegistryKey<World> world, long chunkPos) {
+        Map<Long, ChunkSummary> worldSummaries = summaries.get(world);
+        if (worldSummaries == null) {
+            return;
+        }
+        worldSummaries.computeIfPresent(chunkPos, (key, summary) -> --summary.refCount > 0 ? summary : null);
+    }
+
+    /**
+     * Gets the summary of a chunk without acquiring it.
+     *
+     * @return the summary, or null if no NPC references the chunk
+     */
+    ChunkSummary get(RegistryKey<World> world, long chunkPos) {
+        Map<Long, ChunkSummary> worldSummaries = summaries.get(world);
+        return worldSummaries == null ? null : worldSummaries.get(chunkPos);
+    }
+}
@@ -0,0 +1,148 @@
+package me.prskid1000.craftagent.context;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.*;
+
+/**
+ * Fits the context into a token budget.
+ * State, navigation, action state, the target block, mail and search results are always kept.
+ * Mail and search results are never trimmed because each goes into one context only (mail is
+ * deleted once read, search results are handed over once), so a dropped entry would be lost
+ * for good. Both are kept small where they are collected (10 mails, 5 pages per search).
+ * The list sections (inventory, entities, blocks, book pages, ...) are filled by priority: first a few
+ * entries of every section, then the rest of each section in priority order until the
+ * budget is used up. Every section is filled in the order it is collected in: book pages most
+ * relevant first when they are retrieved (newest first otherwise), blocks and entities nearest
+ * first, so trimming drops the least relevant entries. The number of dropped entries per
+ * section is reported under "truncated".
+ */
+public class ContextAssembler {
+
+    // Sections with a list value, highest priority first (memory.mail and memory.searchResults are never trimmed)
+    private static final List<String> LIST_SECTIONS = List.of(
+            "inventory.hotbar",
+            "inventory.armor",
+            "inventory.offHand",
+            "nearbyEntities",
+            "lineOfSight.entities",
+            "nearbyBlocks",
+            "inventory.mainInventory",
+            "lineOfSight.items",
+            "memory.privateBook",
+            "lineOfSight.visibleBlocks",
+            "memory.sharebook"
+    );
+    private static final int MIN_ENTRIES_PER_SECTION = 2;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ContextAssembler() {}
+
+    /**
+     * Estimates the number of tokens of a text. A rough estimate of four characters
+     * per token, which is close enough for JSON and English text to size a budget.
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Fits the context into the budget.
+     *
+     * @param context        the context sections, see {@code StructuredInputFormatter.createContextMap}
+     * @param tokenBudget    maximum tokens of the whole prompt, 0 or less for no limit
+     * @param reservedTokens tokens already used by the rest of the prompt (system prompt, history)
+     * @return the fitted context, the given map is not modified
+     */
+    public static Map<String, Object> fit(Map<String, Object> context, int tokenBudget, int reservedTokens)
+            throws JsonProcessingException {
+        if (tokenBudget <= 0) {
+            return context;
+        }
+        Map<String, Object> fitted = new LinkedHashMap<>(context);
+
+        // Take the lists out, what is left is always sent
+        Map<String, List<Object>> lists = new LinkedHashMap<>();
+        for (String path : LIST_SECTIONS) {
+            List<Object> entries = getList(fitted, path);
+            if (entries != null) {
+                lists.put(path, entries);
+                putList(fitted, path, new ArrayList<>());
+            }
+        }
+        int remaining = tokenBudget - reservedTokens - estimateTokens(objectMapper.writeValueAsString(fitted));
+
+        Map<String, List<Object>> kept = new LinkedHashMap<>();
+        lists.keySet().forEach(path -> kept.put(path, new ArrayList<>()));
+        remaining = fill(lists, kept, remaining, MIN_ENTRIES_PER_SECTION);
+        fill(lists, kept, remaining, Integer.MAX_VALUE);
+
+        Map<String, Integer> truncated = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Object>> entry : kept.entrySet()) {
+            putList(fitted, entry.getKey(), entry.getValue());
+            int dropped = lists.get(entry.getKey()).size() - entry.getValue().size();
+            if (dropped > 0) {
+                truncated.put(entry.getKey(), dropped);
+            }
+        }
+        if (!truncated.isEmpty()) {
+            fitted.put("truncated", truncated);
+        }
+        return fitted;
+    }
+
+    /**
+     * Adds entries of every section in priority order, up to the given number of entries
+     * per section, as long as they fit into the remaining tokens.
+     *
+     * @return the tokens remaining afterwards
+     */
+    private static int fill(Map<String, List<Object>> lists, Map<String, List<Object>> kept,
+                            int remaining, int maxEntries) throws JsonProcessingException {
+        for (Map.Entry<String, List<Object>> entry : lists.entrySet()) {
+            List<Object> keptEntries = kept.get(entry.getKey());
+            List<Object> entries = entry.getValue();
+            while (keptEntries.size() < entries.size() && keptEntries.size() < maxEntries) {
+                // Entry plus separator
+                int cost = estimateTokens(objectMapper.writeValueAsString(entries.get(keptEntries.size()))) + 1;
+                if (cost > remaining) {
+                    break;
+                }
+                keptEntries.add(entries.get(keptEntries.size()));
+                remaining -= cost;
+            }
+        }
+        return remaining;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> getList(Map<String, Object> context, String path) {
+        int separator = path.indexOf('.');
+        Object value = separator < 0
+                ? context.get(path)
+                : context.get(path.substring(0, separator)) instanceof Map<?, ?> section
+                        ? section.get(path.substring(separator + 1))
+                        : null;
+        return value instanceof List<?> list ? new ArrayList<>((List<Object>) list) : null;
+    }
+
+    /**
+     * Puts a list into the context, copying the section map on the way so the maps of
+     * the original context (shared with the cached {@code WorldContext}) stay untouched.
+     */
+    @SuppressWarnings("unchecked")
+    private static void putList(Map<String, Object> context, String path, List<Object> list) {
+        int separator = path.indexOf('.');
+        if (separator < 0) {
+            context.put(path, list);
+            return;
+        }
+        String sectionName = path.substring(0, separator);
+        Map<String, Object> section = new LinkedHashMap<>((Map<String, Object>) context.get(sectionName));
+        section.put(path.substring(separator + 1), list);
+        context.put(sectionName, section);
+    }
+}
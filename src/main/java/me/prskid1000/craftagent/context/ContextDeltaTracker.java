@@ -0,0 +1,111 @@
+package me.prskid1000.craftagent.context;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.*;
+
+/**
+ * Splits the context of an NPC into a keyframe and a delta.
+ * The keyframe is a full context that stays unchanged across turns (and with it the prompt
+ * prefix the LLM server can reuse), each turn only sends the parts that were added, changed
+ * or removed since the keyframe. A new keyframe is taken periodically, or once the delta has
+ * grown to a large part of the full context.
+ * <p>
+ * Sections are compared one level deep, e.g. {@code memory.mail} and {@code inventory.hotbar}
+ * are separate parts, so a new mail does not resend the whole memory.
+ */
+public class ContextDeltaTracker {
+
+    private static final int KEYFRAME_INTERVAL = 10; // turns
+    private static final double MAX_DELTA_RATIO = 0.5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Map<String, String> keyframeParts;
+    private String keyframeJson;
+    private int turnsSinceKeyframe;
+
+    /**
+     * Computes the keyframe and delta for the current context.
+     *
+     * @param context the context sections, see {@code StructuredInputFormatter.createContextMap}
+     */
+    public synchronized Frame next(Map<String, Object> context) throws JsonProcessingException {
+        Map<String, Object> parts = flatten(context);
+        Map<String, String> serializedParts = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> part : parts.entrySet()) {
+            serializedParts.put(part.getKey(), objectMapper.writeValueAsString(part.getValue()));
+        }
+
+        if (keyframeParts == null || ++turnsSinceKeyframe >= KEYFRAME_INTERVAL) {
+            return takeKeyframe(context, serializedParts);
+        }
+
+        Map<String, Object> changed = new LinkedHashMap<>();
+        int changedSize = 0;
+        for (Map.Entry<String, String> part : serializedParts.entrySet()) {
+            if (!part.getValue().equals(keyframeParts.get(part.getKey()))) {
+                changed.put(part.getKey(), parts.get(part.getKey()));
+                changedSize += part.getValue().length();
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String key : keyframeParts.keySet()) {
+            if (!serializedParts.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+
+        if (changedSize > keyframeJson.length() * MAX_DELTA_RATIO) {
+            return takeKeyframe(context, serializedParts);
+        }
+
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("changed", changed);
+        if (!removed.isEmpty()) {
+            delta.put("removed", removed);
+        }
+        return new Frame(keyframeJson, objectMapper.writeValueAsString(delta), false);
+    }
+
+    /**
+     * Forgets the keyframe, the next turn starts with a new one.
+     */
+    public synchronized void reset() {
+        keyframeParts = null;
+        keyframeJson = null;
+        turnsSinceKeyframe = 0;
+    }
+
+    private Frame takeKeyframe(Map<String, Object> context, Map<String, String> serializedParts)
+            throws JsonProcessingException {
+        keyframeParts = serializedParts;
+        keyframeJson = objectMapper.writeValueAsString(context);
+        turnsSinceKeyframe = 0;
+        return new Frame(keyframeJson, null, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> flatten(Map<String, Object> context) {
+        Map<String, Object> parts = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> section : context.entrySet()) {
+            if (section.getValue() instanceof Map<?, ?> map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) map).entrySet()) {
+                    parts.put(section.getKey() + "." + entry.getKey(), entry.getValue());
+                }
+            } else {
+                parts.put(section.getKey(), section.getValue());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Context of one turn.
+     *
+     * @param keyframeJson the full context of the current keyframe
+     * @param deltaJson    changes since the keyframe, null if the keyframe was just taken
+     * @param newKeyframe  whether the keyframe was taken this turn
+     */
+    public record Frame(String keyframeJson, String deltaJson, boolean newKeyframe) {}
+}
@@ -8,6 +8,7 @@ import me.prskid1000.craftagent.database.repositories.SharebookRepository;
 import me.prskid1000.craftagent.model.context.ContextData;
 import me.prskid1000.craftagent.model.context.WorldContext;
 import me.prskid1000.craftagent.memory.MemoryManager;
+import me.prskid1000.craftagent.memory.MemoryRetriever;
 import me.prskid1000.craftagent.util.LogUtil;
 import me.prskid1000.craftagent.util.MCDataUtil;
 import net.minecraft.entity.Entity;
@@ -23,6 +24,9 @@ import java.util.UUID;
  */
 public class ContextProvider {
 
+	// Sharebook pages loaded per context at least, when only the top-k pages are picked
+	private static final int SHAREBOOK_CANDIDATES = 32;
+
 	private final ServerPlayerEntity npcEntity;
 	private final ChunkManager chunkManager;
 	private final int maxNearbyEntities;
@@ -32,6 +36,9 @@ public class ContextProvider {
 	private MessageRepository messageRepository;
 	private SharebookRepository sharebookRepository;
 	private UUID npcUuid;
+	private MemoryRetriever memoryRetriever;
+	// What the NPC is dealing with right now, memory pages related to it are picked for the prompt
+	private volatile String retrievalQuery = "";
 	
 	// Navigation and line of sight
 	private final NavigationState navigationState;
@@ -40,11 +47,11 @@ public class ContextProvider {
 	// Action state management
 	private final ActionStateManager actionStateManager;
 
-	public ContextProvider(ServerPlayerEntity npcEntity, BaseConfig config) {
+	public ContextProvider(ServerPlayerEntity npcEntity, BaseConfig config, WorldScanService worldScanService) {
 		this.npcEntity = npcEntity;
 		this.maxNearbyEntities = config.getMaxNearbyEntities();
 		this.baseConfig = config;
-		this.chunkManager = new ChunkManager(npcEntity, config);
+		this.chunkManager = new ChunkManager(npcEntity, config, worldScanService);
 		this.navigationState = new NavigationState();
 		// Use config values for line of sight ranges
 		this.lineOfSightProvider = new LineOfSightProvider(
@@ -74,6 +81,17 @@ public class ContextProvider {
 		this.npcUuid = npcUuid;
 	}
 
+	public void setMemoryRetriever(MemoryRetriever memoryRetriever) {
+		this.memoryRetriever = memoryRetriever;
+	}
+
+	/**
+	 * Sets the text the memory pages in the next context are picked for, e.g. the latest messages.
+	 */
+	public void setRetrievalQuery(String retrievalQuery) {
+		this.retrievalQuery = retrievalQuery != null ? retrievalQuery : "";
+	}
+
 	/**
 	 * Builds a context of the NPC entity world environment.
 	 */
@@ -118,17 +136,8 @@ public class ContextProvider {
 	
 	private java.util.Map<String, Object> buildMemoryData() {
 		java.util.Map<String, Object> memory = new java.util.HashMap<>();
-		
-		// Add private book pages (private memory for this NPC)
-		java.util.List<java.util.Map<String, Object>> privatePages = new java.util.ArrayList<>();
-		memoryManager.getPages().forEach(page -> {
-			java.util.Map<String, Object> pageMap = new java.util.HashMap<>();
-			pageMap.put("pageTitle", page.getPageTitle());
-			pageMap.put("content", page.getContent());
-			pageMap.put("timestamp", page.getTimestamp());
-			privatePages.add(pageMap);
-		});
-		memory.put("privateBook", privatePages);
+		// Pages are picked for the latest messages and the new mail
+		StringBuilder query = new StringBuilder(retrievalQuery);
 		
 		// Add mail (messages) - get ALL messages, delete ALL immediately, send first 10 to LLM
 		// No read/unread concept - any mail found is automatically "new" and will be processed
@@ -151,6 +160,7 @@ public class ContextProvider {
 					msgMap.put("content", msg.getContent());
 					msgMap.put("timestamp", msg.getTimestamp());
 					messages.add(msgMap);
+					query.append('\n').append(msg.getContent());
 					count++;
 				}
 				// Collect all message IDs for deletion
@@ -170,10 +180,23 @@ public class ContextProvider {
 			memory.put("mail", messages);
 		}
 		
+		// Add private book pages (private memory for this NPC)
+		java.util.List<java.util.Map<String, Object>> privatePages = new java.util.ArrayList<>();
+		selectRelevant(query.toString(), memoryManager.getPages(),
+				page -> page.getPageTitle() + "\n" + page.getContent()).forEach(page -> {
+			java.util.Map<String, Object> pageMap = new java.util.HashMap<>();
+			pageMap.put("pageTitle", page.getPageTitle());
+			pageMap.put("content", page.getContent());
+			pageMap.put("timestamp", page.getTimestamp());
+			privatePages.add(pageMap);
+		});
+		memory.put("privateBook", privatePages);
+		
 		// Add sharebook (shared information accessible to all NPCs)
 		if (sharebookRepository != null) {
 			java.util.List<java.util.Map<String, Object>> sharebookPages = new java.util.ArrayList<>();
-			sharebookRepository.selectAll().forEach(page -> {
+			selectRelevant(query.toString(), getSharebookCandidates(query.toString()),
+					page -> page.getPageTitle() + "\n" + page.getContent()).forEach(page -> {
 				java.util.Map<String, Object> pageMap = new java.util.HashMap<>();
 				pageMap.put("pageTitle", page.getPageTitle());
 				pageMap.put("content", page.getContent());
@@ -184,9 +207,50 @@ public class ContextProvider {
 			memory.put("sharebook", sharebookPages);
 		}
 		
+		// Add the pages found by search actions since the last context
+		java.util.List<java.util.Map<String, Object>> searchResults = memoryManager.takeSearchResults();
+		if (!searchResults.isEmpty()) {
+			memory.put("searchResults", searchResults);
+		}
+		
 		return memory;
 	}
 
+	/**
+	 * Gets the sharebook pages to pick from. When only the top-k pages are picked, the whole book
+	 * is not loaded: without a query the newest k pages are taken, otherwise the full-text
+	 * matches of the query and the newest pages are ranked.
+	 */
+	private java.util.List<me.prskid1000.craftagent.model.database.SharebookPage> getSharebookCandidates(String query) {
+		int topK = memoryRetriever != null ? memoryRetriever.getTopK() : 0;
+		if (topK <= 0) {
+			return sharebookRepository.selectAll();
+		}
+		if (query.isBlank()) {
+			return sharebookRepository.selectLatest(topK);
+		}
+		int limit = Math.max(SHAREBOOK_CANDIDATES, topK * 2);
+		java.util.Map<String, me.prskid1000.craftagent.model.database.SharebookPage> candidates = new java.util.LinkedHashMap<>();
+		for (var page : sharebookRepository.search(query, limit)) {
+			candidates.putIfAbsent(page.getPageTitle() + "\n" + page.getAuthorUuid(), page);
+		}
+		for (var page : sharebookRepository.selectLatest(limit)) {
+			candidates.putIfAbsent(page.getPageTitle() + "\n" + page.getAuthorUuid(), page);
+		}
+		return new java.util.ArrayList<>(candidates.values());
+	}
+
+	/**
+	 * Picks the pages most related to the query, all pages if there is no retriever.
+	 */
+	private <T> java.util.List<T> selectRelevant(String query, java.util.List<T> pages,
+	                                            java.util.function.Function<T, String> text) {
+		if (memoryRetriever == null) {
+			return pages;
+		}
+		return memoryRetriever.selectRelevant(query, pages, text);
+	}
+
 	private ContextData.StateData getNpcState() {
 		return new ContextData.StateData(
 				npcEntity.getBlockPos(),
@@ -152,21 +152,20 @@ public class LineOfSightProvider {
             if (hitResult.getType() == HitResult.Type.BLOCK) {
                 BlockPos blockPos = hitResult.getBlockPos();
                 var blockState = world.getBlockState(blockPos);
-                String blockName = blockState.getBlock().getName().getString()
-                    .toLowerCase().replace(" ", "_");
                 
                 // Skip air blocks
-                if (blockName.contains("air")) {
+                if (blockState.isAir()) {
                     return null;
                 }
                 
                 double distance = eyePos.distanceTo(hitResult.getPos());
                 
+                BlockStateTable.Entry entry = BlockStateTable.get(blockState);
                 return new ContextData.BlockData(
-                    blockName,
+                    entry.type(),
                     blockPos,
-                    me.prskid1000.craftagent.util.MCDataUtil.getMiningLevel(blockState),
-                    me.prskid1000.craftagent.util.MCDataUtil.getToolNeeded(blockState)
+                    entry.miningLevel(),
+                    entry.tool()
                 );
             }
             
@@ -195,15 +194,14 @@ public class LineOfSightProvider {
                 
                 if (!world.isAir(blockPos)) {
                     var blockState = world.getBlockState(blockPos);
-                    String blockName = blockState.getBlock().getName().getString()
-                        .toLowerCase().replace(" ", "_");
                     
-                    if (!blockName.contains("air") && isInLineOfSight(eyePos, samplePos, maxRange)) {
+                    if (isInLineOfSight(eyePos, samplePos, maxRange)) {
+                        BlockStateTable.Entry entry = BlockStateTable.get(blockState);
                         visibleBlocks.add(new ContextData.BlockData(
-                            blockName,
+                            entry.type(),
                             blockPos,
-                            me.prskid1000.craftagent.util.MCDataUtil.getMiningLevel(blockState),
-                            me.prskid1000.craftagent.util.MCDataUtil.getToolNeeded(blockState)
+                            entry.miningLevel(),
+                            entry.tool()
                         ));
                     }
                 }
@@ -0,0 +1,144 @@
+package me.prskid1000.craftagent.context;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.world.chunk.PalettedContainer;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of one chunk section and its six neighbours, taken on the server thread.
+ * Worker threads classify blocks from the copy without touching live world state.
+ */
+final class SectionSnapshot {
+
+    static final int MASK_LENGTH = 64;
+    // Bits of the x = 0 and x = 15 columns in the four rows of a mask word
+    private static final long X_MIN = 0x0001_0001_0001_0001L;
+    private static final long X_MAX = 0x8000_8000_8000_8000L;
+
+    private final long sectionPos;
+    private final long version;
+    private final SectionView center;
+    private final SectionView down;
+    private final SectionView up;
+    private final SectionView north;
+    private final SectionView south;
+    private final SectionView west;
+    private final SectionView east;
+
+    SectionSnapshot(long sectionPos, long version, SectionView center,
+                    SectionView down, SectionView up,
+                    SectionView north, SectionView south,
+                    SectionView west, SectionView east) {
+        this.sectionPos = sectionPos;
+        this.version = version;
+        this.center = center;
+        this.down = down;
+        this.up = up;
+        this.north = north;
+        this.south = south;
+        this.west = west;
+        this.east = east;
+    }
+
+    long sectionPos() {
+        return sectionPos;
+    }
+
+    long version() {
+        return version;
+    }
+
+    SectionView center() {
+        return center;
+    }
+
+    /**
+     * Computes which blocks of the center section are solid and have air on at least one side.
+     * Works on whole rows of bits at once: the air masks of the section and of the faces of its
+     * neighbours are shifted onto each block's position, so there are no per-block neighbour
+     * lookups. Bit layout as in {@link SectionView#airMask()}.
+     */
+    long[] exposedMask() {
+        long[] air = center.airMask();
+        long[] downAir = down.airMask();
+        long[] upAir = up.airMask();
+        long[] northAir = north.airMask();
+        long[] southAir = south.airMask();
+        long[] westAir = west.airMask();
+        long[] eastAir = east.airMask();
+        long[] exposed = new long[MASK_LENGTH];
+
+        for (int i = 0; i < MASK_LENGTH; i++) {
+            long rows = air[i];
+            // Word i holds four z rows of layer y, zGroup is which four (z = 4 * zGroup ... 4 * zGroup + 3)
+            int zGroup = i & 3;
+            int y = i >>> 2;
+
+            long east = (rows >>> 1) & ~X_MAX | (eastAir[i] & X_MIN) << 15;
+            long west = (rows << 1) & ~X_MIN | (westAir[i] & X_MAX) >>> 15;
+            long south = rows >>> 16 | (zGroup == 3 ? southAir[i - 3] : air[i + 1]) << 48;
+            long north = rows << 16 | (zGroup == 0 ? northAir[i + 3] : air[i - 1]) >>> 48;
+            long up = y == 15 ? upAir[i - 60] : air[i + 4];
+            long down = y == 0 ? downAir[i + 60] : air[i - 4];
+
+            exposed[i] = ~rows & (east | west | south | north | up | down);
+        }
+        return exposed;
+    }
+
+    /**
+     * Block states of one section. Sections that do not need a copy are represented by
+     * the shared {@link #AIR} (empty or above the world) and {@link #UNKNOWN}
+     * (unloaded or below the world, treated as solid) views.
+     */
+    static final class SectionView {
+        static final SectionView AIR = new SectionView(null, filledMask(-1L));
+        static final SectionView UNKNOWN = new SectionView(null, filledMask(0L));
+
+        private final PalettedContainer<BlockState> states;
+        // Computed once per copy, views are shared between the snapshots of one tick
+        private volatile long[] airMask;
+
+        private SectionView(PalettedContainer<BlockState> states, long[] airMask) {
+            this.states = states;
+            this.airMask = airMask;
+        }
+
+        static SectionView of(PalettedContainer<BlockState> states) {
+            return new SectionView(states, null);
+        }
+
+        boolean hasStates() {
+            return states != null;
+        }
+
+        BlockState get(int x, int y, int z) {
+            return states.get(x, y, z);
+        }
+
+        /**
+         * Gets the air blocks of the section as 4096 bits, bit {@code y << 8 | z << 4 | x}
+         * is set if the block is air. Each word holds four rows of 16 blocks along x.
+         */
+        long[] airMask() {
+            long[] mask = airMask;
+            if (mask == null) {
+                mask = new long[MASK_LENGTH];
+                for (int index = 0; index < 4096; index++) {
+                    if (states.get(index & 15, index >>> 8, (index >>> 4) & 15).isAir()) {
+                        mask[index >>> 6] |= 1L << (index & 63);
+                    }
+                }
+                airMask = mask;
+            }
+            return mask;
+        }
+
+        private static long[] filledMask(long value) {
+            long[] mask = new long[MASK_LENGTH];
+            Arrays.fill(mask, value);
+            return mask;
+        }
+    }
+}
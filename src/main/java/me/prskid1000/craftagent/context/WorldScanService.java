@@ -0,0 +1,255 @@
+package me.prskid1000.craftagent.context;
+
+import me.prskid1000.craftagent.context.SectionSnapshot.SectionView;
+import me.prskid1000.craftagent.listener.EventListener;
+import me.prskid1000.craftagent.model.context.ContextData;
+import me.prskid1000.craftagent.util.LogUtil;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared block scanning for all NPCs.
+ * Chunk sections are copied on the server thread within a fixed time budget per tick,
+ * the copies are classified on a small bounded worker pool. This keeps the number of
+ * threads independent of the NPC count and never reads live world state off-thread.
+ * Classified sections go into the shared {@link ChunkSummaryCache}, so NPCs with overlapping
+ * scan ranges index every section only once.
+ */
+public class WorldScanService implements EventListener {
+
+    private static final long TICK_BUDGET_NANOS = 2_000_000L; // 2ms of every 50ms tick
+    private static final int WORKER_QUEUE_CAPACITY = 256;
+    private static final int WORKER_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    private final Set<ChunkManager> chunkManagers = ConcurrentHashMap.newKeySet();
+    private final ChunkSummaryCache chunkSummaryCache = new ChunkSummaryCache();
+    // Only touched on the server thread
+    private final ArrayDeque<RefreshJob> activeJobs = new ArrayDeque<>();
+    private ThreadPoolExecutor workerPool;
+
+    @Override
+    public void register() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> tick());
+    }
+
+    public void addChunkManager(ChunkManager chunkManager) {
+        chunkManagers.add(chunkManager);
+    }
+
+    public void removeChunkManager(ChunkManager chunkManager) {
+        chunkManagers.remove(chunkManager);
+    }
+
+    ChunkSummaryCache getChunkSummaryCache() {
+        return chunkSummaryCache;
+    }
+
+    private void tick() {
+        if (chunkManagers.isEmpty() && activeJobs.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        ThreadPoolExecutor pool = getWorkerPool();
+
+        for (ChunkManager chunkManager : chunkManagers) {
+            if (chunkManager.isRefreshDue(now)) {
+                RefreshJob job = chunkManager.createRefreshJob(now);
+                if (job != null) {
+                    activeJobs.add(job);
+                }
+            }
+        }
+
+        // Copies are shared between jobs of the same tick, neighbouring NPCs need the same sections
+        Map<ServerWorld, Map<Long, SectionView>> views = new HashMap<>();
+        while (!activeJobs.isEmpty()
+                && System.nanoTime() - start < TICK_BUDGET_NANOS
+                && pool.getQueue().remainingCapacity() > 0) {
+            RefreshJob job = activeJobs.poll();
+            if (job.isCancelled()) {
+                continue;
+            }
+
+            Long sectionPos = job.pendingSections.poll();
+            if (sectionPos != null) {
+                SectionSnapshot snapshot = snapshot(job.world, sectionPos,
+                        views.computeIfAbsent(job.world, world -> new HashMap<>()));
+                job.outstanding.incrementAndGet();
+                pool.execute(() -> classify(job, snapshot));
+            }
+
+            if (job.pendingSections.isEmpty()) {
+                // Release the submission token, the last finished section completes the job
+                if (job.outstanding.decrementAndGet() == 0) {
+                    pool.execute(() -> job.chunkManager.finishRefresh(job));
+                }
+            } else {
+                // Round robin, so one large refresh does not starve the others
+                activeJobs.add(job);
+            }
+        }
+    }
+
+    private SectionSnapshot snapshot(ServerWorld world, long sectionPos, Map<Long, SectionView> views) {
+        int x = ChunkSectionPos.unpackX(sectionPos);
+        int y = ChunkSectionPos.unpackY(sectionPos);
+        int z = ChunkSectionPos.unpackZ(sectionPos);
+        SectionView center = view(world, x, y, z, views);
+        long version = center == SectionView.UNKNOWN ? -1L : ChunkChangeTracker.getVersion(world, sectionPos);
+
+        return new SectionSnapshot(sectionPos, version, center,
+                view(world, x, y - 1, z, views), view(world, x, y + 1, z, views),
+                view(world, x, y, z - 1, views), view(world, x, y, z + 1, views),
+                view(world, x - 1, y, z, views), view(world, x + 1, y, z, views));
+    }
+
+    private SectionView view(ServerWorld world, int x, int y, int z, Map<Long, SectionView> views) {
+        return views.computeIfAbsent(ChunkSectionPos.asLong(x, y, z), key -> {
+            if (y < world.getBottomSectionCoord()) {
+                return SectionView.UNKNOWN;
+            }
+            if (y > world.getTopSectionCoord()) {
+                return SectionView.AIR;
+            }
+            if (!world.isChunkLoaded(x, z)) {
+                return SectionView.UNKNOWN;
+            }
+            WorldChunk chunk = world.getChunk(x, z);
+            int index = chunk.sectionCoordToIndex(y);
+            ChunkSection[] sections = chunk.getSectionArray();
+            if (index < 0 || index >= sections.length) {
+                return SectionView.UNKNOWN;
+            }
+            ChunkSection section = sections[index];
+            if (section == null || section.isEmpty()) {
+                return SectionView.AIR;
+            }
+            return SectionView.of(section.getBlockStateContainer().copy());
+        });
+    }
+
+    private void classify(RefreshJob job, SectionSnapshot snapshot) {
+        try {
+            long sectionPos = snapshot.sectionPos();
+            List<ContextData.BlockData> blocks = classify(snapshot);
+            // The summary is gone if every NPC moved away in the meantime
+            ChunkSummary summary = chunkSummaryCache.get(job.world.getRegistryKey(),
+                    ChunkPos.toLong(ChunkSectionPos.unpackX(sectionPos), ChunkSectionPos.unpackZ(sectionPos)));
+            if (summary != null) {
+                summary.put(ChunkSectionPos.unpackY(sectionPos), snapshot.version(), blocks);
+            }
+        } catch (Exception e) {
+            LogUtil.error("Error classifying section " + ChunkSectionPos.from(snapshot.sectionPos()), e);
+        } finally {
+            if (job.outstanding.decrementAndGet() == 0) {
+                job.chunkManager.finishRefresh(job);
+            }
+        }
+    }
+
+    private List<ContextData.BlockData> classify(SectionSnapshot snapshot) {
+        SectionView center = snapshot.center();
+        if (!center.hasStates()) {
+            return List.of();
+        }
+        int baseX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(snapshot.sectionPos()));
+        int baseY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(snapshot.sectionPos()));
+        int baseZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(snapshot.sectionPos()));
+        List<ContextData.BlockData> blocks = new ArrayList<>();
+
+        // Only visit solid blocks next to air, buried blocks are never touched
+        long[] exposed = snapshot.exposedMask();
+        for (int word = 0; word < exposed.length; word++) {
+            long bits = exposed[word];
+            while (bits != 0) {
+                int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int x = index & 15;
+                int y = index >>> 8;
+                int z = (index >>> 4) & 15;
+
+                BlockStateTable.Entry entry = BlockStateTable.get(center.get(x, y, z));
+                blocks.add(new ContextData.BlockData(entry.type(), new BlockPos(baseX + x, baseY + y, baseZ + z),
+                        entry.miningLevel(), entry.tool()));
+            }
+        }
+        return blocks;
+    }
+
+    private synchronized ThreadPoolExecutor getWorkerPool() {
+        if (workerPool == null || workerPool.isShutdown()) {
+            AtomicInteger threadCount = new AtomicInteger();
+            workerPool = new ThreadPoolExecutor(
+                    WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "CraftAgent-WorldScan-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+        }
+        return workerPool;
+    }
+
+    public synchronized void shutdown() {
+        activeJobs.forEach(RefreshJob::cancel);
+        activeJobs.clear();
+        if (workerPool == null) {
+            return;
+        }
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One refresh of a {@link ChunkManager}: the sections still to snapshot and the
+     * number of classifications in flight (plus one token until all are submitted).
+     * Sections claimed by a cancelled job can be claimed again by other refreshes.
+     */
+    static final class RefreshJob {
+        final ChunkManager chunkManager;
+        final ServerWorld world;
+        final BlockPos center;
+        final int minY;
+        final int maxY;
+        final ArrayDeque<Long> pendingSections = new ArrayDeque<>();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        private volatile boolean cancelled;
+
+        RefreshJob(ChunkManager chunkManager, ServerWorld world, BlockPos center, int minY, int maxY) {
+            this.chunkManager = chunkManager;
+            this.world = world;
+            this.center = center;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -32,6 +32,9 @@ class CoordinationService(
         
         val maxMessages = targetNpc.contextProvider.getBaseConfig().getMaxMessages()
         messageRepository.insert(dbMessage, maxMessages)
+        npcService.onMailReceived(toNpcUuid, dbMessage.timestamp)
+        // Let the recipient answer right away instead of waiting for its next turn
+        npcService.wakeupQueue.wake(toNpcUuid)
         
         // Display in chat
         val chatMessage = "${fromNpc.config.npcName} says to ${targetNpc.config.npcName}: $message"
@@ -3,6 +3,11 @@ package me.prskid1000.craftagent.database;
 import me.prskid1000.craftagent.CraftAgent;
 import java.io.File;
 import java.sql.*;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
 import net.fabricmc.loader.api.FabricLoader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,6 +18,8 @@ import org.apache.logging.log4j.Logger;
 public class SqliteClient {
 
 	private static final Logger LOGGER = LogManager.getLogger(SqliteClient.class);
+	// Words of a full-text query, the retrieval queries are whole messages
+	private static final int MAX_QUERY_TERMS = 64;
 	private Connection connection;
 	private String databasePath;
 	private String databaseName;
@@ -63,6 +70,30 @@ public class SqliteClient {
 		}
 	}
 
+	/**
+	 * Select entries from db with a prepared statement.
+	 * @param statement the prepared statement, closed together with the ResultSet
+	 * @return ResultSet or null if error occurred
+	 */
+	public ResultSet query(PreparedStatement statement) {
+		if (statement == null) {
+			LOGGER.error("PreparedStatement is null");
+			return null;
+		}
+		try {
+			statement.closeOnCompletion();
+			return statement.executeQuery();
+		} catch (SQLException e) {
+			LOGGER.error("Error executing prepared query: {}", e.getMessage(), e);
+			try {
+				statement.close();
+			} catch (SQLException closeException) {
+				LOGGER.error("Error closing prepared statement: {}", closeException.getMessage());
+			}
+			return null;
+		}
+	}
+
 	/**
 	 * Execute prepared statement.
 	 * @param statement the prepared statement
@@ -85,6 +116,20 @@ public class SqliteClient {
 		}
 	}
 
+	/**
+	 * Execute prepared statement, unlike {@link #update(PreparedStatement)} errors are thrown
+	 * so the caller can keep its data and retry.
+	 * @param statement the prepared statement, null if it could not be built
+	 */
+	public void updateOrThrow(PreparedStatement statement) throws SQLException {
+		if (statement == null) {
+			throw new SQLException("PreparedStatement is null");
+		}
+		try (statement) {
+			statement.executeUpdate();
+		}
+	}
+
 	public PreparedStatement buildPreparedStatement(String sql) {
 		try {
 			if (connection == null || connection.isClosed()) {
@@ -136,6 +181,62 @@ public class SqliteClient {
 		}
 	}
 
+	/**
+	 * Create an FTS5 full-text index named {@code <table>_fts} over text columns of a table.
+	 * The index stores no copy of the text (external content), triggers keep it in sync with
+	 * the table, and it is rebuilt from the table on every start, so rows written while it
+	 * did not exist are indexed as well.
+	 * @param tableName the indexed table, a rowid table
+	 * @param columns the text columns to index
+	 * @return false if SQLite has no FTS5, callers fall back to LIKE then
+	 */
+	public boolean createFullTextIndex(String tableName, List<String> columns) {
+		String indexName = tableName + "_fts";
+		String columnList = String.join(", ", columns);
+		String newValues = columns.stream().map(column -> "new." + column).collect(Collectors.joining(", "));
+		String oldValues = columns.stream().map(column -> "old." + column).collect(Collectors.joining(", "));
+		String insertNew = "INSERT INTO %s(rowid, %s) VALUES (new.rowid, %s);".formatted(indexName, columnList, newValues);
+		String deleteOld = "INSERT INTO %s(%s, rowid, %s) VALUES ('delete', old.rowid, %s);"
+				.formatted(indexName, indexName, columnList, oldValues);
+		try {
+			update("CREATE VIRTUAL TABLE IF NOT EXISTS %s USING fts5(%s, content='%s')"
+					.formatted(indexName, columnList, tableName));
+			update("CREATE TRIGGER IF NOT EXISTS %s_insert AFTER INSERT ON %s BEGIN %s END"
+					.formatted(indexName, tableName, insertNew));
+			update("CREATE TRIGGER IF NOT EXISTS %s_delete AFTER DELETE ON %s BEGIN %s END"
+					.formatted(indexName, tableName, deleteOld));
+			update("CREATE TRIGGER IF NOT EXISTS %s_update AFTER UPDATE ON %s BEGIN %s %s END"
+					.formatted(indexName, tableName, deleteOld, insertNew));
+			update("INSERT INTO %s(%s) VALUES ('rebuild')".formatted(indexName, indexName));
+			return true;
+		} catch (SQLException e) {
+			LOGGER.warn("Full-text index {} is not available, searching {} without it: {}", indexName, tableName, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Turn free text into an FTS5 query matching any of its words. Every word is quoted,
+	 * so FTS5 operators and special characters in the text are matched literally.
+	 * Only the first {@value #MAX_QUERY_TERMS} distinct words are used.
+	 * @param text the search text
+	 * @return the query, or null if the text has no words
+	 */
+	public static String toFullTextQuery(String text) {
+		Set<String> words = new LinkedHashSet<>();
+		for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+			if (!word.isEmpty() && words.size() < MAX_QUERY_TERMS) {
+				words.add(word);
+			}
+		}
+		if (words.isEmpty()) {
+			return null;
+		}
+		StringJoiner query = new StringJoiner(" OR ");
+		words.forEach(word -> query.add("\"" + word + "\""));
+		return query.toString();
+	}
+
 	/**
 	 * Drop a table if it exists. This will also automatically drop all indexes on the table.
 	 * @param tableName the name of the table to drop
@@ -7,6 +7,11 @@ import java.util.UUID
 class ConversationRepository(
     val sqliteClient: SqliteClient,
 ) {
+    companion object {
+        // Rows per insert statement, 4 parameters each stay below SQLite's parameter limit
+        private const val INSERT_CHUNK_SIZE = 200
+    }
+
     fun init() {
         createTable()
     }
@@ -57,14 +62,56 @@ class ConversationRepository(
     }
 
     /**
-     * Selects latest conversations of an NPC, ordered by timestamp (oldest first)
+     * Inserts conversations with one statement per chunk instead of one per conversation.
+     * Throws if a chunk fails, the chunks before it are stored.
+     */
+    fun insertAll(conversations: List<Conversation>) {
+        conversations.chunked(INSERT_CHUNK_SIZE).forEach { chunk ->
+            val placeholders = chunk.joinToString(", ") { "(?, ?, ?, ?)" }
+            val statement = sqliteClient.buildPreparedStatement(
+                "INSERT INTO conversations (uuid, role, message, timestamp) VALUES $placeholders"
+            )
+            chunk.forEachIndexed { index, conversation ->
+                val offset = index * 4
+                statement?.setString(offset + 1, conversation.uuid.toString())
+                statement?.setString(offset + 2, conversation.role)
+                statement?.setString(offset + 3, conversation.message)
+                statement?.setLong(offset + 4, conversation.timestamp)
+            }
+            sqliteClient.updateOrThrow(statement)
+        }
+    }
+
+    /**
+     * Selects conversations of an NPC from the oldest, ordered by timestamp (oldest first)
      * @param limit Maximum number of conversations to return (default 100)
+     * @param roles Roles to select, all if null
      */
-    fun selectByUuid(uuid: UUID, limit: Int = 100): List<Conversation> {
-        val sql = "SELECT * FROM conversations WHERE uuid = '%s' ORDER BY timestamp ASC LIMIT %d".format(uuid.toString(), limit)
+    fun selectByUuid(uuid: UUID, limit: Int = 100, roles: List<String>? = null): List<Conversation> {
+        val sql = "SELECT * FROM conversations WHERE uuid = '%s'%s ORDER BY timestamp ASC, id ASC LIMIT %d"
+            .format(uuid.toString(), roleFilter(roles), limit)
         return executeAndProcessConversations(sql)
     }
 
+    /**
+     * Selects the latest conversations of an NPC, ordered by timestamp (oldest first)
+     * @param limit Maximum number of conversations to return
+     * @param roles Roles to select, all if null
+     */
+    fun selectLatestByUuid(uuid: UUID, limit: Int, roles: List<String>? = null): List<Conversation> {
+        val sql = ("SELECT * FROM (SELECT * FROM conversations WHERE uuid = '%s'%s ORDER BY timestamp DESC, id DESC LIMIT %d) " +
+                "ORDER BY timestamp ASC, id ASC").format(uuid.toString(), roleFilter(roles), limit)
+        return executeAndProcessConversations(sql)
+    }
+
+    /**
+     * Roles are fixed names from the code, never user input
+     */
+    private fun roleFilter(roles: List<String>?): String {
+        if (roles == null) return ""
+        return " AND role IN (%s)".format(roles.joinToString(",") { "'$it'" })
+    }
+
     /**
      * Deletes all conversations of the given uuid.
      */
@@ -83,6 +83,20 @@ class MessageRepository(
         return executeAndProcessMessages(sql)
     }
 
+    /**
+     * Gets the timestamp of the latest message to the recipient, 0 if there is none.
+     */
+    fun selectLatestTimestamp(recipientUuid: UUID): Long {
+        val statement = sqliteClient.buildPreparedStatement(
+            "SELECT MAX(timestamp) AS latest FROM messages WHERE recipient_uuid = ?"
+        ) ?: return 0L
+        statement.setString(1, recipientUuid.toString())
+        val result = sqliteClient.query(statement) ?: return 0L
+        val latest = if (result.next()) result.getLong("latest") else 0L
+        result.close()
+        return latest
+    }
+
     fun delete(messageId: Long) {
         val sql = "DELETE FROM messages WHERE id = %d".format(messageId)
         sqliteClient.update(sql)
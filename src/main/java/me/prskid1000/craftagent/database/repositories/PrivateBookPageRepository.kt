@@ -2,14 +2,18 @@ package me.prskid1000.craftagent.database.repositories
 
 import me.prskid1000.craftagent.database.SqliteClient
 import me.prskid1000.craftagent.model.database.PrivateBookPage
+import java.sql.ResultSet
 import java.util.UUID
 
 class PrivateBookPageRepository(
     val sqliteClient: SqliteClient,
 ) {
-    
+    // Whether the full-text index private_book_fts exists, see search()
+    private var searchIndex = false
+
     fun init() {
         createTable()
+        searchIndex = sqliteClient.createFullTextIndex("private_book", listOf("page_title", "content"))
     }
 
     fun createTable() {
@@ -87,6 +91,37 @@ class PrivateBookPageRepository(
         return pages.firstOrNull()
     }
 
+    /**
+     * Finds the pages of an NPC matching any word of the query, best matches first.
+     * Without the full-text index the pages containing the query as a whole are returned, newest first.
+     */
+    fun search(npcUuid: UUID, query: String, limit: Int): List<PrivateBookPage> {
+        if (!searchIndex) {
+            if (query.isBlank()) return emptyList()
+            val statement = sqliteClient.buildPreparedStatement(
+                """SELECT * FROM private_book WHERE npc_uuid = ? AND (page_title LIKE ? OR content LIKE ?)
+                   ORDER BY timestamp DESC LIMIT ?"""
+            ) ?: return emptyList()
+            statement.setString(1, npcUuid.toString())
+            statement.setString(2, "%${query.trim()}%")
+            statement.setString(3, "%${query.trim()}%")
+            statement.setInt(4, limit)
+            return processPages(sqliteClient.query(statement))
+        }
+
+        val match = SqliteClient.toFullTextQuery(query) ?: return emptyList()
+        val statement = sqliteClient.buildPreparedStatement(
+            """SELECT private_book.* FROM private_book_fts
+               JOIN private_book ON private_book.rowid = private_book_fts.rowid
+               WHERE private_book_fts MATCH ? AND private_book.npc_uuid = ?
+               ORDER BY bm25(private_book_fts) LIMIT ?"""
+        ) ?: return emptyList()
+        statement.setString(1, match)
+        statement.setString(2, npcUuid.toString())
+        statement.setInt(3, limit)
+        return processPages(sqliteClient.query(statement))
+    }
+
     fun delete(npcUuid: UUID, pageTitle: String) {
         val sql = "DELETE FROM private_book WHERE npc_uuid = '%s' AND page_title = '%s'".format(
             npcUuid.toString(), pageTitle.replace("'", "''")
@@ -101,7 +136,10 @@ class PrivateBookPageRepository(
 
 
     private fun executeAndProcessPages(sql: String): List<PrivateBookPage> {
-        val result = sqliteClient.query(sql)
+        return processPages(sqliteClient.query(sql))
+    }
+
+    private fun processPages(result: ResultSet?): List<PrivateBookPage> {
         val pages = arrayListOf<PrivateBookPage>()
 
         if (result == null) return emptyList()
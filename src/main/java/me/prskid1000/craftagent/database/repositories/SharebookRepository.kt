@@ -2,13 +2,17 @@ package me.prskid1000.craftagent.database.repositories
 
 import me.prskid1000.craftagent.database.SqliteClient
 import me.prskid1000.craftagent.model.database.SharebookPage
+import java.sql.ResultSet
 
 class SharebookRepository(
     val sqliteClient: SqliteClient,
 ) {
-    
+    // Whether the full-text index sharebook_fts exists, see search()
+    private var searchIndex = false
+
     fun init() {
         createTable()
+        searchIndex = sqliteClient.createFullTextIndex("sharebook", listOf("page_title", "content"))
     }
 
     fun createTable() {
@@ -78,6 +82,42 @@ class SharebookRepository(
         return executeAndProcessPages(sql)
     }
 
+    /**
+     * Selects the newest pages, ordered by timestamp (newest first)
+     */
+    fun selectLatest(limit: Int): List<SharebookPage> {
+        val sql = "SELECT * FROM sharebook ORDER BY timestamp DESC LIMIT %d".format(limit)
+        return executeAndProcessPages(sql)
+    }
+
+    /**
+     * Finds the pages matching any word of the query, best matches first.
+     * Without the full-text index the pages containing the query as a whole are returned, newest first.
+     */
+    fun search(query: String, limit: Int): List<SharebookPage> {
+        if (!searchIndex) {
+            if (query.isBlank()) return emptyList()
+            val statement = sqliteClient.buildPreparedStatement(
+                "SELECT * FROM sharebook WHERE page_title LIKE ? OR content LIKE ? ORDER BY timestamp DESC LIMIT ?"
+            ) ?: return emptyList()
+            statement.setString(1, "%${query.trim()}%")
+            statement.setString(2, "%${query.trim()}%")
+            statement.setInt(3, limit)
+            return processPages(sqliteClient.query(statement))
+        }
+
+        val match = SqliteClient.toFullTextQuery(query) ?: return emptyList()
+        val statement = sqliteClient.buildPreparedStatement(
+            """SELECT sharebook.* FROM sharebook_fts
+               JOIN sharebook ON sharebook.rowid = sharebook_fts.rowid
+               WHERE sharebook_fts MATCH ?
+               ORDER BY bm25(sharebook_fts) LIMIT ?"""
+        ) ?: return emptyList()
+        statement.setString(1, match)
+        statement.setInt(2, limit)
+        return processPages(sqliteClient.query(statement))
+    }
+
     fun selectByTitleAndAuthor(pageTitle: String, authorUuid: String): SharebookPage? {
         val sql = "SELECT * FROM sharebook WHERE page_title = '%s' AND author_uuid = '%s'".format(
             pageTitle.replace("'", "''"), authorUuid.replace("'", "''")
@@ -98,7 +138,10 @@ class SharebookRepository(
     }
 
     private fun executeAndProcessPages(sql: String): List<SharebookPage> {
-        val result = sqliteClient.query(sql)
+        return processPages(sqliteClient.query(sql))
+    }
+
+    private fun processPages(result: ResultSet?): List<SharebookPage> {
         val pages = arrayListOf<SharebookPage>()
 
         if (result == null) return emptyList()
@@ -4,6 +4,7 @@ import me.prskid1000.craftagent.database.repositories.ConversationRepository
 import me.prskid1000.craftagent.database.repositories.MessageRepository
 import me.prskid1000.craftagent.database.repositories.PrivateBookPageRepository
 import me.prskid1000.craftagent.database.repositories.SharebookRepository
+import me.prskid1000.craftagent.history.ConversationWriter
 import me.prskid1000.craftagent.util.LogUtil
 import java.util.UUID
 
@@ -19,6 +20,9 @@ class ResourceProvider(
     val messageRepository: MessageRepository? = null,
     val sharebookRepository: SharebookRepository? = null
 ) {
+    // New conversation messages are written behind, see ConversationWriter
+    val conversationWriter = ConversationWriter(conversationRepository)
+
     /**
      * Loads resources from database.
      * Note: All resources are now stored directly in database, no need to load into memory.
@@ -30,10 +34,10 @@ class ResourceProvider(
 
     /**
      * Saves resources to database. (called on server stop)
-     * Note: All resources are already saved in database as they're created, no need to save again.
+     * Note: Conversation messages are written behind and flushed here, all other resources are
+     * saved in database as they're created.
      */
     fun saveResources() {
-        // All resources are already saved in database as they're created
-        // No need to save them again on shutdown
+        conversationWriter.flush()
     }
 }
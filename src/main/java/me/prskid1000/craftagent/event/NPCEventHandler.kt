@@ -2,7 +2,10 @@ package me.prskid1000.craftagent.event
 
 import me.prskid1000.craftagent.action.ActionExecutor
 import me.prskid1000.craftagent.common.NPCService
+import me.prskid1000.craftagent.config.LLMBackendConfig
 import me.prskid1000.craftagent.config.NPCConfig
+import me.prskid1000.craftagent.context.ContextAssembler
+import me.prskid1000.craftagent.context.ContextDeltaTracker
 import me.prskid1000.craftagent.context.ContextProvider
 import me.prskid1000.craftagent.database.repositories.MessageRepository
 import me.prskid1000.craftagent.database.repositories.SharebookRepository
@@ -10,6 +13,9 @@ import me.prskid1000.craftagent.history.ConversationHistory
 import me.prskid1000.craftagent.history.ConversationMessage
 import me.prskid1000.craftagent.llm.LLMClient
 import me.prskid1000.craftagent.llm.StructuredLLMResponse
+import me.prskid1000.craftagent.llm.StructuredStreamListener
+import me.prskid1000.craftagent.model.context.WorldContext
+import me.prskid1000.craftagent.util.CompactContextEncoder
 import me.prskid1000.craftagent.util.LogUtil
 import me.prskid1000.craftagent.util.StructuredInputFormatter
 import java.util.concurrent.ArrayBlockingQueue
@@ -24,13 +30,15 @@ class NPCEventHandler(
     private val config: NPCConfig,
     private val messageRepository: MessageRepository,
     private val sharebookRepository: SharebookRepository,
-    private val npcService: NPCService
+    private val npcService: NPCService,
+    private val llmBackendConfig: LLMBackendConfig
 ): EventHandler {
     private val executorService: ThreadPoolExecutor = ThreadPoolExecutor(
         1, 1, 0L, TimeUnit.MILLISECONDS,
         ArrayBlockingQueue(10),
         ThreadPoolExecutor.DiscardPolicy()
     )
+    private val contextDeltaTracker = ContextDeltaTracker()
 
     /**
      * @deprecated Use updateState() instead. This now just calls updateState() for backward compatibility.
@@ -67,16 +75,24 @@ class NPCEventHandler(
                 return true // Return true to indicate "success" (no error, just skipped)
             }
 
-            // Perform summarization if needed
-            history.performSummarizationIfNeeded()
+            // Summarization runs in the background (see LLMProcessingScheduler), the turn reads
+            // the history as it is, with or without the summary swapped in
+            val recentMessages = history.latestConversations
+            // Memory pages related to what happened since the last turn go into the context
+            contextProvider.setRetrievalQuery(
+                recentMessages.takeLastWhile { it.role == "user" }.joinToString("\n") { it.message }
+            )
+            val worldContext = contextProvider.buildContext()
 
             // Build messages for LLM: system prompt (fresh) + history + current state with context
+            // Only the context changes between turns and it always comes last, the stable system prompt
+            // and append-only history in front of it are a prompt prefix the LLM server can reuse
             val messagesForLLM = mutableListOf<ConversationMessage>()
             // Add system prompt first (generated fresh, never stored)
             messagesForLLM.add(ConversationMessage(history.getSystemPrompt(), "system"))
             // Add all history messages (without context) - these are only user/assistant, no system
             // Filter out actions from assistant messages - only send message part to LLM
-            history.latestConversations.forEach { msg ->
+            recentMessages.forEach { msg ->
                 if (msg.role == "assistant") {
                     // Extract only the message part from structured response (filter out actions)
                     // The full JSON is stored in DB, but we only send the message text to LLM
@@ -91,52 +107,48 @@ class NPCEventHandler(
             // If there's a last user message, replace it with formatted version that includes context
             if (messagesForLLM.isNotEmpty() && messagesForLLM.last().role == "user") {
                 val lastUserMessage = messagesForLLM.last().message
-                val formattedPrompt: String = StructuredInputFormatter.formatStructured(lastUserMessage, contextProvider.buildContext())
+                val formattedPrompt: String = formatWithContext(lastUserMessage, worldContext, messagesForLLM)
                 messagesForLLM[messagesForLLM.size - 1] = ConversationMessage(formattedPrompt, "user")
             } else {
                 // No recent user message, create a context-only prompt
                 val contextPrompt = "Current state and context. What should I do?"
-                val formattedPrompt: String = StructuredInputFormatter.formatStructured(contextPrompt, contextProvider.buildContext())
+                val formattedPrompt: String = formatWithContext(contextPrompt, worldContext, messagesForLLM)
                 messagesForLLM.add(ConversationMessage(formattedPrompt, "user"))
             }
             
             // Call LLM and get response
             val server = contextProvider.getNpcEntity().server
-            val llmResponse = llmClient.chat(messagesForLLM, server)
+            // Extract message part from last stored response, read before the response is stored
+            val lastMessage = extractMessageFromStructuredResponse(history.getLastMessage())
+            val actionExecutor by lazy { createActionExecutor() }
+            var streamedActions = 0
+            var messageSent = false
+            val llmResponse = if (llmBackendConfig.isStreamResponses) {
+                // Act on the message and each action as soon as the LLM has generated them
+                llmClient.chatStreaming(messagesForLLM, server, object : StructuredStreamListener {
+                    override fun onMessage(message: String) {
+                        messageSent = true
+                        sendMessage(message, lastMessage)
+                    }
+
+                    override fun onAction(action: String) {
+                        streamedActions++
+                        actionExecutor.executeActions(listOf(action))
+                    }
+                })
+            } else {
+                llmClient.chat(messagesForLLM, server)
+            }
             
             // Parse structured response (message + actions)
             val structuredResponse = llmResponse.structuredResponse
-            val message = structuredResponse.message
-            val actions = structuredResponse.actions
-            
-            // Execute actions if present
+            // Execute actions the stream did not deliver (not streamed, or the stream could not be parsed)
+            val actions = structuredResponse.actions.drop(streamedActions)
             if (actions.isNotEmpty()) {
-                val npcEntity = contextProvider.getNpcEntity()
-                
-                // Create action provider with all handlers using factory
-                val actionProvider = me.prskid1000.craftagent.action.ActionProviderFactory.create(
-                    npcEntity,
-                    contextProvider,
-                    config.uuid,
-                    config.npcName,
-                    contextProvider.memoryManager,
-                    messageRepository,
-                    sharebookRepository,
-                    npcService,
-                    contextProvider.baseConfig
-                )
-                val actionExecutor = ActionExecutor(npcEntity, actionProvider)
                 actionExecutor.executeActions(actions)
-                
             }
-            
-            // Send message if present (non-empty, not whitespace-only) and different from last
-            // Empty string ("") means NPC doesn't want to speak publicly
-            // Extract message part from last stored response for comparison
-            val lastMessage = extractMessageFromStructuredResponse(history.getLastMessage())
-            if (structuredResponse.hasNonEmptyMessage() && message.trim() != lastMessage.trim()) {
-                val npcEntity = contextProvider.getNpcEntity()
-                me.prskid1000.craftagent.util.ChatUtil.sendChatMessage(npcEntity, message)
+            if (!messageSent) {
+                sendMessage(structuredResponse.message, lastMessage)
             }
             
             // Store structured response in history (store the full JSON for web UI display)
@@ -152,6 +164,86 @@ class NPCEventHandler(
         }
     }
 
+    private fun createActionExecutor(): ActionExecutor {
+        val npcEntity = contextProvider.getNpcEntity()
+        // Create action provider with all handlers using factory
+        val actionProvider = me.prskid1000.craftagent.action.ActionProviderFactory.create(
+            npcEntity,
+            contextProvider,
+            config.uuid,
+            config.npcName,
+            contextProvider.memoryManager,
+            messageRepository,
+            sharebookRepository,
+            npcService,
+            contextProvider.baseConfig
+        )
+        return ActionExecutor(npcEntity, actionProvider)
+    }
+
+    /**
+     * Sends the message if present (non-empty, not whitespace-only) and different from the last one.
+     * Empty string ("") means NPC doesn't want to speak publicly.
+     */
+    private fun sendMessage(message: String, lastMessage: String) {
+        if (message.isNotBlank() && message.trim() != lastMessage.trim()) {
+            me.prskid1000.craftagent.util.ChatUtil.sendChatMessage(contextProvider.getNpcEntity(), message)
+        }
+    }
+
+    /**
+     * Formats the prompt with the current context. In delta mode the context keyframe is
+     * appended to the system prompt (first message), so it stays a stable prefix across turns,
+     * and the prompt only carries the changes since the keyframe.
+     */
+    private fun formatWithContext(
+        prompt: String,
+        worldContext: WorldContext,
+        messagesForLLM: MutableList<ConversationMessage>
+    ): String {
+        if (config.promptTokenBudget <= 0 && !config.isContextDeltaMode && !config.isCompactContext) {
+            contextDeltaTracker.reset()
+            // Nothing to trim or diff, stream the context directly
+            return StructuredInputFormatter.formatStructured(prompt, worldContext)
+        }
+
+        // Everything but the context counts against the prompt token budget
+        val otherMessages = if (messagesForLLM.last().role == "user") messagesForLLM.dropLast(1) else messagesForLLM
+        val reservedTokens = otherMessages
+            .sumOf { ContextAssembler.estimateTokens(it.message) } + ContextAssembler.estimateTokens(prompt)
+        var context = ContextAssembler.fit(
+            StructuredInputFormatter.createContextMap(worldContext),
+            config.promptTokenBudget,
+            reservedTokens
+        )
+        if (config.isCompactContext) {
+            val compactContext = CompactContextEncoder.encode(context)
+            if (contextProvider.baseConfig.isVerbose) {
+                logCompactSavings(context, compactContext)
+            }
+            context = compactContext
+        }
+        if (!config.isContextDeltaMode) {
+            contextDeltaTracker.reset()
+            return StructuredInputFormatter.formatStructured(prompt, context)
+        }
+
+        val frame = contextDeltaTracker.next(context)
+        val systemPrompt = messagesForLLM.first().message + StructuredInputFormatter.formatKeyframe(frame.keyframeJson)
+        messagesForLLM[0] = ConversationMessage(systemPrompt, "system")
+        return StructuredInputFormatter.formatDelta(prompt, frame.deltaJson)
+    }
+
+    /**
+     * Logs the estimated tokens of the compact context against the regular JSON encoding.
+     */
+    private fun logCompactSavings(context: Map<String, Any>, compactContext: Map<String, Any>) {
+        val regularTokens = ContextAssembler.estimateTokens(StructuredInputFormatter.toJson(context))
+        val compactTokens = ContextAssembler.estimateTokens(StructuredInputFormatter.toJson(compactContext))
+        val savedPercent = if (regularTokens > 0) (regularTokens - compactTokens) * 100 / regularTokens else 0
+        LogUtil.info("Compact context for ${config.npcName}: ~$compactTokens tokens instead of ~$regularTokens ($savedPercent% saved)")
+    }
+
     override fun stopService() {
         executorService.shutdown()
         try {
@@ -2,41 +2,101 @@ package me.prskid1000.craftagent.history
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import me.prskid1000.craftagent.constant.Instructions
+import me.prskid1000.craftagent.context.ContextAssembler
 import me.prskid1000.craftagent.database.repositories.ConversationRepository
 import me.prskid1000.craftagent.llm.LLMClient
 import me.prskid1000.craftagent.model.database.Conversation
 import java.util.UUID
 
 /**
- * ConversationHistory that uses direct database calls instead of in-memory storage.
- * All conversations are persisted immediately to the database.
+ * ConversationHistory that keeps the recent messages in a ring buffer in memory and persists
+ * new messages through the write-behind [ConversationWriter]. Turns read from memory only,
+ * the database is read when the history is created and when it is summarized.
+ *
+ * The memory of the NPC has three tiers, each with its own budget:
+ * - recent messages: the last `maxHistoryLength * 2` user/assistant messages, sent as they are
+ * - episodes: one summary per compacted block of messages, at most [EPISODE_TOKEN_BUDGET] tokens
+ * - digest: one long-term memory the oldest episodes are merged into, at most [DIGEST_TOKEN_BUDGET] tokens
+ *
+ * Episodes and digest are stored as conversations with the roles "episode" and "digest" and are
+ * added to the system prompt, so the prompt stays the same size however long the NPC runs.
  */
 class ConversationHistory(
     private val llmClient: LLMClient,
     private val conversationRepository: ConversationRepository,
+    private val conversationWriter: ConversationWriter,
     private val npcUuid: UUID,
     private val systemPrompt: () -> String, // Function to generate system prompt fresh
     private val maxHistoryLength: Int = 5
 ) {
     companion object {
         private val objectMapper = ObjectMapper()
+
+        private const val EPISODE_ROLE = "episode"
+        private const val DIGEST_ROLE = "digest"
+        private val MESSAGE_ROLES = listOf("user", "assistant")
+
+        const val EPISODE_TOKEN_BUDGET = 1200
+        const val DIGEST_TOKEN_BUDGET = 600
+        // Roughly 4 characters per token, see ContextAssembler.estimateTokens
+        private const val CHARS_PER_TOKEN = 4
+    }
+
+    private val windowSize get() = maxHistoryLength * 2
+    // Holds enough messages to tell when the summary is overdue
+    private val capacity get() = windowSize * 2 + 1
+    // Newest stored messages, oldest first, guarded by this
+    private val recent = ArrayDeque<ConversationMessage>()
+    // Episode summaries, oldest first, guarded by this
+    private val episodes = ArrayList<Conversation>()
+    private var digest: Conversation? = null
+
+    init {
+        loadRecent()
+        loadMemory()
     }
 
     /**
-     * Gets the latest conversations from database, ordered by timestamp (oldest first)
-     * Filters out system messages - system prompt is generated fresh, not stored
+     * Whether the history outgrew its window and older messages should be summarized.
+     */
+    val isSummarizationDue: Boolean
+        get() = synchronized(this) { recent.size > windowSize }
+
+    /**
+     * Whether so many messages piled up that the summary should not wait for idle capacity anymore.
+     */
+    val isSummarizationOverdue: Boolean
+        get() = synchronized(this) { recent.size > windowSize * 2 }
+
+    /**
+     * Gets the latest conversations, ordered by timestamp (oldest first)
+     * System messages are never stored - system prompt is generated fresh
      */
     val latestConversations: List<ConversationMessage>
         get() = synchronized(this) {
-            conversationRepository.selectByUuid(npcUuid, maxHistoryLength * 2)
-                .filter { it.role != "system" } // Never return system messages from DB
-                .map { ConversationMessage(it.message, it.role, it.timestamp) }
+            recent.takeLast(windowSize)
         }
-    
+
     /**
-     * Gets the current system prompt (generated fresh)
+     * Gets the current system prompt (generated fresh) followed by the digest and episodes.
+     * They only change when the history is summarized, so the prompt prefix stays stable between summaries.
      */
-    fun getSystemPrompt(): String = systemPrompt()
+    fun getSystemPrompt(): String {
+        val memory = getMemoryPrompt()
+        return if (memory.isEmpty()) systemPrompt() else systemPrompt() + "\n\n" + memory
+    }
+
+    @Synchronized
+    private fun getMemoryPrompt(): String {
+        val builder = StringBuilder()
+        digest?.let { builder.append("# LONG-TERM MEMORY\n").append(it.message).append("\n") }
+        if (episodes.isNotEmpty()) {
+            if (builder.isNotEmpty()) builder.append("\n")
+            builder.append("# EARLIER EPISODES (oldest first)\n")
+            episodes.forEach { builder.append("- ").append(it.message).append("\n") }
+        }
+        return builder.toString().trimEnd()
+    }
 
     @Synchronized
     fun add(message: ConversationMessage) {
@@ -44,81 +104,154 @@ class ConversationHistory(
         if (message.role == "system") {
             return
         }
-        
-        // Insert directly to database (only user/assistant messages)
-        val conversation = Conversation(
-            uuid = npcUuid,
-            role = message.role,
-            message = message.message,
-            timestamp = message.timestamp
-        )
-        conversationRepository.insert(conversation)
 
-        // Check if summarization is needed
-        val currentCount = conversationRepository.selectByUuid(npcUuid, maxHistoryLength + 1).size
-        if (currentCount > maxHistoryLength) {
-            // Summarization will be handled in performSummarizationIfNeeded()
+        recent.addLast(message)
+        if (recent.size > capacity) {
+            recent.removeFirst()
         }
+        // Written to the database in the next batch (only user/assistant messages)
+        conversationWriter.write(
+            Conversation(
+                uuid = npcUuid,
+                role = message.role,
+                message = message.message,
+                timestamp = message.timestamp
+            )
+        )
+        // Summarization is run by the scheduler in the background, see performSummarizationIfNeeded()
+    }
+
+    /**
+     * Loads the newest stored messages into the ring buffer.
+     */
+    private fun loadRecent() {
+        recent.clear()
+        conversationRepository.selectLatestByUuid(npcUuid, capacity, MESSAGE_ROLES)
+            .mapTo(recent) { ConversationMessage(it.message, it.role, it.timestamp) }
+    }
+
+    /**
+     * Loads the episodes and the digest.
+     */
+    private fun loadMemory() {
+        episodes.clear()
+        episodes.addAll(conversationRepository.selectByUuid(npcUuid, Int.MAX_VALUE, listOf(EPISODE_ROLE)))
+        digest = conversationRepository.selectLatestByUuid(npcUuid, 1, listOf(DIGEST_ROLE)).firstOrNull()
     }
 
     /**
      * Checks if summarization is needed and performs it if so.
-     * Should be called during processLLM() to ensure it goes through the scheduler.
+     * Called by the scheduler in the background, when the backend has capacity left.
+     *
+     * The summary is generated without holding the history, so turns of the NPC go on reading
+     * and adding messages meanwhile. The summarized messages are then swapped for the summary
+     * in one step.
+     *
+     * The history is compacted only once it outgrows the window: the older messages are
+     * replaced by one episode summary and the newer half of the window is kept. Once the
+     * episodes exceed their budget, the oldest ones are merged into the digest.
+     * Between compactions messages are only appended, so the system prompt and history
+     * stay a byte-identical prompt prefix across turns and the LLM server can reuse its
+     * prompt cache instead of processing the whole prompt again.
      * @return true if summarization was performed, false otherwise
      */
-    @Synchronized
     fun performSummarizationIfNeeded(): Boolean {
-        val allConversations = conversationRepository.selectByUuid(npcUuid, maxHistoryLength * 2)
-        
-        // Filter out system messages (they're not stored anyway)
-        val nonSystemConversations = allConversations.filter { it.role != "system" }
-        
-        if (nonSystemConversations.size < maxHistoryLength) {
-            return false
-        }
+        val toSummarize = synchronized(this) {
+            // The summarized messages are deleted by their database ids, so everything has to be written first
+            conversationWriter.flush()
+            val messages = conversationRepository.selectByUuid(npcUuid, Int.MAX_VALUE, MESSAGE_ROLES)
 
-        val removeCount = maxHistoryLength / 3
-        if (nonSystemConversations.size < removeCount + 1) {
-            return false
-        }
+            if (messages.size <= windowSize) {
+                // The buffer holds messages the database does not (e.g. a failed write), it follows the database
+                loadRecent()
+                return false
+            }
 
-        // Get conversations to summarize (system messages are never stored)
-        val toSummarize = nonSystemConversations.take(removeCount)
-        
-        if (toSummarize.isEmpty()) {
-            return false
+            // Get conversations to summarize, everything but the newer half of the window
+            messages.dropLast(maxOf(1, windowSize / 2))
         }
 
-        // Convert to ConversationMessage for summarization
+        // Convert to ConversationMessage for summarization, the LLM call runs without the lock
         val messagesToSummarize = toSummarize.map { ConversationMessage(it.message, it.role, it.timestamp) }
-        val summaryMessage = summarize(messagesToSummarize)
-        
-        // Delete old conversations from database
-        val idsToDelete = toSummarize.map { it.id }
-        conversationRepository.deleteByIds(idsToDelete)
-        
-        // Insert summary message
-        val summaryConversation = Conversation(
-            uuid = npcUuid,
-            role = summaryMessage.role,
-            message = summaryMessage.message,
-            timestamp = summaryMessage.timestamp
-        )
-        conversationRepository.insert(summaryConversation)
-        
+        val episodeText = summarize(messagesToSummarize)
+
+        synchronized(this) {
+            // Delete old conversations from database, messages added meanwhile are newer and stay
+            conversationRepository.deleteByIds(toSummarize.map { it.id })
+            conversationRepository.insert(
+                Conversation(
+                    uuid = npcUuid,
+                    role = EPISODE_ROLE,
+                    message = episodeText,
+                    timestamp = toSummarize.last().timestamp
+                )
+            )
+            // Messages added meanwhile are written first, then the buffer is loaded without the summarized ones
+            conversationWriter.flush()
+            loadRecent()
+            loadMemory()
+        }
+
+        mergeEpisodesIfNeeded()
         return true
     }
 
-    private fun summarize(conversations: List<ConversationMessage>): ConversationMessage {
-        val summarizeMessage = ConversationMessage(
-            Instructions.SUMMARY_PROMPT.format(objectMapper.writeValueAsString(conversations)),
-            "user"
+    /**
+     * Merges the oldest episodes into the digest while the episodes exceed their budget.
+     * The newest episode always stays an episode.
+     */
+    private fun mergeEpisodesIfNeeded() {
+        val (toMerge, currentDigest) = synchronized(this) {
+            var tokens = episodes.sumOf { ContextAssembler.estimateTokens(it.message) }
+            if (tokens <= EPISODE_TOKEN_BUDGET) {
+                return
+            }
+            val toMerge = ArrayList<Conversation>()
+            for (episode in episodes.dropLast(1)) {
+                if (tokens <= EPISODE_TOKEN_BUDGET) break
+                toMerge.add(episode)
+                tokens -= ContextAssembler.estimateTokens(episode.message)
+            }
+            if (toMerge.isEmpty()) return
+            Pair(toMerge, digest)
+        }
+
+        val maxChars = DIGEST_TOKEN_BUDGET * CHARS_PER_TOKEN
+        val prompt = Instructions.DIGEST_PROMPT.format(
+            maxChars,
+            currentDigest?.message ?: "(none yet)",
+            toMerge.joinToString("\n") { "- " + it.message }
         )
-        // Use chat and extract content
-        // NOTE: This is called during processLLM(), so it's within the scheduler's control
+        // The budget is a hard limit, a digest that came out too long is cut
+        val digestText = request(prompt).take(maxChars)
+
+        synchronized(this) {
+            conversationRepository.deleteByIds(toMerge.map { it.id } + listOfNotNull(currentDigest?.id))
+            conversationRepository.insert(
+                Conversation(
+                    uuid = npcUuid,
+                    role = DIGEST_ROLE,
+                    message = digestText,
+                    timestamp = toMerge.last().timestamp
+                )
+            )
+            loadMemory()
+        }
+    }
+
+    private fun summarize(conversations: List<ConversationMessage>): String {
+        return request(Instructions.SUMMARY_PROMPT.format(objectMapper.writeValueAsString(conversations)))
+    }
+
+    /**
+     * Sends a single prompt and returns the text of the answer.
+     */
+    private fun request(prompt: String): String {
+        // NOTE: This is started by the scheduler, so it's within the concurrency limits
         // Pass null for server since summarization doesn't need server context
-        val llmResponse = llmClient.chat(listOf(summarizeMessage), null)
-        return ConversationMessage(llmResponse.content, "assistant")
+        val llmResponse = llmClient.chat(listOf(ConversationMessage(prompt, "user")), null)
+        // Responses are structured, the text is in the message (plain text if the response was not)
+        return llmResponse.structuredResponse.message.ifBlank { llmResponse.content }.trim()
     }
 
     @Synchronized
@@ -128,8 +261,8 @@ class ConversationHistory(
         // The systemPrompt function will be called when needed
     }
 
+    @Synchronized
     fun getLastMessage(): String {
-        val conversations = latestConversations
-        return conversations.lastOrNull()?.message ?: ""
+        return recent.lastOrNull()?.message ?: ""
     }
-}
\ No newline at end of file
+}
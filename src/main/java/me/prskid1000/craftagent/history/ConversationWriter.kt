@@ -0,0 +1,95 @@
+package me.prskid1000.craftagent.history
+
+import me.prskid1000.craftagent.database.repositories.ConversationRepository
+import me.prskid1000.craftagent.model.database.Conversation
+import me.prskid1000.craftagent.util.LogUtil
+import java.util.UUID
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Write-behind persistence of conversation messages. The histories read their recent messages
+ * from memory and hand new ones to the writer, which inserts the messages of all NPCs in
+ * batches every second (or once a batch is full) instead of one insert per message.
+ * Pending messages are flushed on server stop, a crash loses at most the last second.
+ */
+class ConversationWriter(
+    private val conversationRepository: ConversationRepository
+) {
+    companion object {
+        private const val FLUSH_INTERVAL_MILLIS = 1000L
+        private const val BATCH_SIZE = 64
+    }
+
+    private val pending = ArrayList<Conversation>() // guarded by this
+    // NPCs discarded since the current batch was taken, its messages are not requeued; guarded by this
+    private val discardedSinceFlush = HashSet<UUID>()
+    // Flushes run one at a time, so a flush returns only once everything written before it is stored
+    private val flushLock = Any()
+    private val flusher: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "CraftAgent-History-Writer").apply { isDaemon = true }
+    }
+
+    init {
+        flusher.scheduleWithFixedDelay({ flushSafely() }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Queues a message for the next batch.
+     */
+    fun write(conversation: Conversation) {
+        val batchFull = synchronized(this) {
+            pending.add(conversation)
+            pending.size >= BATCH_SIZE
+        }
+        if (batchFull) {
+            flusher.execute { flushSafely() }
+        }
+    }
+
+    /**
+     * Stores all queued messages, blocks until they are in the database.
+     * If the insert fails the messages not yet stored are queued again in front and the error is thrown.
+     */
+    fun flush() {
+        synchronized(flushLock) {
+            val batch = synchronized(this) {
+                if (pending.isEmpty()) return
+                discardedSinceFlush.clear()
+                ArrayList(pending).also { pending.clear() }
+            }
+            // Slices stay below the insert chunk size, so each one is stored completely or not at all
+            var stored = 0
+            try {
+                for (slice in batch.chunked(BATCH_SIZE)) {
+                    conversationRepository.insertAll(slice)
+                    stored += slice.size
+                }
+            } catch (e: Exception) {
+                synchronized(this) {
+                    pending.addAll(0, batch.subList(stored, batch.size).filter { it.uuid !in discardedSinceFlush })
+                }
+                throw e
+            }
+        }
+    }
+
+    /**
+     * Drops the queued messages of an NPC, called before its conversations are deleted.
+     */
+    fun discard(npcUuid: UUID) {
+        synchronized(this) {
+            pending.removeIf { it.uuid == npcUuid }
+            discardedSinceFlush.add(npcUuid)
+        }
+    }
+
+    private fun flushSafely() {
+        try {
+            flush()
+        } catch (e: Exception) {
+            LogUtil.error("Error writing conversations to database", e)
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package me.prskid1000.craftagent.listener
+
+import me.prskid1000.craftagent.context.BlockStateTable
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents
+
+/**
+ * Rebuilds the [BlockStateTable] on server start and whenever datapacks (and with them
+ * the block tags used for mining levels and tools) are reloaded.
+ */
+class BlockStateTableListener : BaseEventListener() {
+
+    override fun register() {
+        ServerLifecycleEvents.SERVER_STARTED.register { _ ->
+            BlockStateTable.rebuild()
+        }
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register { _, _, success ->
+            if (success) {
+                BlockStateTable.rebuild()
+            }
+        }
+    }
+}
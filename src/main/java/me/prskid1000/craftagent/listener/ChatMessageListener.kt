@@ -34,6 +34,8 @@ class ChatMessageListener(
                             targetNpc.config.uuid,
                             actualMessage
                         )
+                        // Addressed directly, the NPC answers on the next free turn
+                        npcService.wakeupQueue.wake(targetNpc.config.uuid)
                         return@register
                     }
                 }
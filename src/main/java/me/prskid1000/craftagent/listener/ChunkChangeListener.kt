@@ -0,0 +1,30 @@
+package me.prskid1000.craftagent.listener
+
+import me.prskid1000.craftagent.callback.BlockEvents
+import me.prskid1000.craftagent.context.ChunkChangeTracker
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents
+
+/**
+ * Feeds block updates and chunk load/unload events into the [ChunkChangeTracker],
+ * so the NPC block indexes only re-index sections that actually changed.
+ */
+class ChunkChangeListener : BaseEventListener() {
+
+    override fun register() {
+        BlockEvents.BLOCK_CHANGED.register { world, pos, oldState, newState ->
+            if (oldState != newState) {
+                ChunkChangeTracker.markBlockChanged(world, pos)
+            }
+        }
+        ServerChunkEvents.CHUNK_LOAD.register { world, chunk ->
+            ChunkChangeTracker.markChunkChanged(world, chunk.pos)
+        }
+        ServerChunkEvents.CHUNK_UNLOAD.register { world, chunk ->
+            ChunkChangeTracker.forgetChunk(world, chunk.pos)
+        }
+        ServerWorldEvents.UNLOAD.register { _, world ->
+            ChunkChangeTracker.forgetWorld(world)
+        }
+    }
+}
@@ -22,6 +22,9 @@ class EventListenerRegisterer(
         listOf<EventListener>(
             ChatMessageListener(npcService),
             AgeUpdateListener(npcService),
+            ChunkChangeListener(),
+            BlockStateTableListener(),
+            npcService.worldScanService,
             scheduler
         ).forEach { listener -> listener.register() }
     }
@@ -31,5 +34,6 @@ class EventListenerRegisterer(
      */
     fun shutdown() {
         llmProcessingScheduler?.shutdown()
+        npcService.worldScanService.shutdown()
     }
 }
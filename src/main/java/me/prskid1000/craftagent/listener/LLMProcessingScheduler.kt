@@ -2,36 +2,97 @@ package me.prskid1000.craftagent.listener
 
 import me.prskid1000.craftagent.common.NPCService
 import me.prskid1000.craftagent.config.ConfigProvider
+import me.prskid1000.craftagent.config.LLMBackendConfig
+import me.prskid1000.craftagent.context.NavigationState
+import me.prskid1000.craftagent.llm.LLMConcurrencyLimiter
+import me.prskid1000.craftagent.model.NPC
+import me.prskid1000.craftagent.thread.VirtualThreads
 import me.prskid1000.craftagent.util.LogUtil
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents
 import net.minecraft.server.MinecraftServer
+import net.minecraft.server.network.ServerPlayerEntity
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
-import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.max
+import kotlin.math.min
 
 /**
- * Scheduler that processes NPCs serially in a FIFO queue with configurable intervals.
- * Uses a single-threaded executor to ensure only one NPC processes at a time.
+ * Scheduler that runs the LLM turns of the NPCs concurrently, busiest NPCs first.
+ *
+ * Every dispatch pass scores the NPCs that are due: unread mail and recent damage weigh most,
+ * then players nearby and actions in progress, plus the time waited since the last turn so
+ * every NPC gets its turn eventually. NPCs are started in score order (queue order on ties) as
+ * long as the total limit and the limits of their backend URL and model (see [LLMBackendConfig])
+ * allow it.
+ *
+ * How often an NPC is due follows the measured latency of its backend: the gap between turns
+ * is at least the time the backend needs to give every NPC using it one turn, so the backend
+ * keeps up instead of falling behind. NPCs with mail or damage only wait the min interval,
+ * idle NPCs wait several gaps.
+ *
+ * Events wake an NPC through the [me.prskid1000.craftagent.common.WakeupQueue] (directed chat,
+ * mail, and damage and arrival detected here): after a short debounce a dispatch pass runs
+ * right away and the NPC goes first, so it answers within about one LLM round trip.
+ *
+ * NPCs of a backend whose circuit is open (see [me.prskid1000.craftagent.llm.LLMCircuitBreaker])
+ * are parked without being scored until a health probe finds the backend again. A backend whose
+ * last request failed gets one turn at a time, so a slow or overloaded backend is not flooded
+ * with turns that all run into the timeout.
+ *
+ * Histories that outgrew their window are summarized in the background with the capacity the
+ * turns leave, so a summary never holds up a turn. Only once messages pile up far beyond the
+ * window does a summary get its slot before the turns.
  */
 class LLMProcessingScheduler(
     private val npcService: NPCService,
     private val configProvider: ConfigProvider
 ) : BaseEventListener() {
 
-    // Thread-safe queue for multi-threaded access
+    companion object {
+        private const val NEARBY_PLAYER_RANGE = 24.0
+        private const val RECENT_DAMAGE_MILLIS = 10_000L
+        // Idle NPCs (nothing to react to, no player around) take turns this many gaps apart
+        private const val IDLE_PACE_FACTOR = 3
+        // Weight of the newest latency sample in the moving average
+        private const val LATENCY_SMOOTHING = 0.3
+        private const val MAX_WAIT_SCORE = 3.0
+        // Events within this time are handled in one turn
+        private const val WAKE_DEBOUNCE_MILLIS = 300L
+        // Woken NPCs still wait this long after their last turn, keeps NPCs mailing each other in check
+        private const val WAKE_MIN_GAP_MILLIS = 2_000L
+
+        private const val MAIL_SCORE = 4.0
+        private const val DAMAGE_SCORE = 4.0
+        private const val PLAYER_NEARBY_SCORE = 2.0
+        private const val BUSY_SCORE = 1.0
+        private const val WAKE_SCORE = 8.0
+    }
+
+    // Thread-safe queue for multi-threaded access, the order breaks ties between equal scores
     private val fifoQueue = ConcurrentLinkedQueue<UUID>()
+    private val inFlight = ConcurrentHashMap.newKeySet<UUID>()
+    // NPCs whose history is being summarized
+    private val summarizing = ConcurrentHashMap.newKeySet<UUID>()
+    private val summaryRetryAfter = ConcurrentHashMap<UUID, Long>()
     private val lastSuccessfulTrigger = ConcurrentHashMap<UUID, Long>()
+    // Failed turns are retried after the processing interval, not on the next tick
+    private val retryAfter = ConcurrentHashMap<UUID, Long>()
+    private val lastDamaged = ConcurrentHashMap<UUID, Long>()
+    private val lastNavigationState = HashMap<UUID, NavigationState.State>() // server thread only
+    private val wakeupQueue = npcService.wakeupQueue
+    // Moving average of the turn duration in ms per backend and model
+    private val turnLatency = ConcurrentHashMap<String, Double>()
+    private val limiter = npcService.llmConcurrencyLimiter
+    private val endpointPool = npcService.llmEndpointPool
+    private val turnCompleted = AtomicBoolean(false)
     private var lastProcessingTime = 0L
-    
-    // Single-threaded executor ensures serial processing
-    private val executorService: ThreadPoolExecutor = ThreadPoolExecutor(
-        1, 1, 0L, TimeUnit.MILLISECONDS,
-        ArrayBlockingQueue(100),
-        ThreadPoolExecutor.CallerRunsPolicy()
-    )
+
+    // One thread per turn (virtual where available), the number of turns is limited by the dispatch pass
+    private val executorService: ExecutorService = VirtualThreads.newExecutor("CraftAgent-LLM-")
 
     override fun register() {
         ServerTickEvents.END_SERVER_TICK.register { server ->
@@ -40,22 +101,48 @@ class LLMProcessingScheduler(
             val interval = baseConfig.llmProcessingInterval * 1000L // X seconds to ms
             val minInterval = baseConfig.llmMinInterval * 1000L // Y seconds to ms
 
-            // Check if interval X has passed and executor is idle
-            if (executorService.queue.isEmpty() && currentTime - lastProcessingTime >= interval) {
+            trackEvents(currentTime)
+
+            // Dispatch every X seconds, and right away when a turn frees a slot or an NPC was woken
+            if (turnCompleted.getAndSet(false)
+                || wakeupQueue.pollNewlyReady(currentTime, WAKE_DEBOUNCE_MILLIS)
+                || currentTime - lastProcessingTime >= interval) {
                 syncQueueWithNPCs() // Ensure queue is up to date
-                processNextNPC(server, currentTime, minInterval)
+                dispatch(server, currentTime, interval, minInterval)
                 lastProcessingTime = currentTime
             }
         }
     }
 
+    /**
+     * Detects damage and arrival at the navigation destination, both wake the NPC.
+     */
+    private fun trackEvents(currentTime: Long) {
+        npcService.uuidToNpc.forEach { (uuid, npc) ->
+            // hurtTime only lasts a few ticks, so it is sampled every tick, it is at its max on the hit
+            val entity = npc.entity
+            if (entity.hurtTime > 0) {
+                lastDamaged[uuid] = currentTime
+                if (entity.hurtTime == entity.maxHurtTime) {
+                    wakeupQueue.wake(uuid)
+                }
+            }
+
+            val navigationState = npc.contextProvider.navigationState.state
+            val previousState = lastNavigationState.put(uuid, navigationState)
+            if (navigationState == NavigationState.State.ARRIVED && previousState != null && previousState != navigationState) {
+                wakeupQueue.wake(uuid)
+            }
+        }
+    }
+
     private fun syncQueueWithNPCs() {
         val currentNPCs = npcService.uuidToNpc.keys.toSet()
         val queueSet = fifoQueue.toSet()
-        
-        // Add new NPCs to queue
+
+        // Add new NPCs to queue, NPCs in flight are added back when their turn is done
         currentNPCs.forEach { uuid ->
-            if (!queueSet.contains(uuid)) {
+            if (!queueSet.contains(uuid) && !inFlight.contains(uuid)) {
                 fifoQueue.offer(uuid)
             }
         }
@@ -65,55 +152,242 @@ class LLMProcessingScheduler(
             val uuid = iterator.next()
             if (!currentNPCs.contains(uuid)) {
                 iterator.remove()
+                lastSuccessfulTrigger.remove(uuid)
+                retryAfter.remove(uuid)
+                summaryRetryAfter.remove(uuid)
+                lastDamaged.remove(uuid)
+                lastNavigationState.remove(uuid)
+                wakeupQueue.remove(uuid)
             }
         }
     }
 
-    private fun processNextNPC(server: MinecraftServer, currentTime: Long, minInterval: Long) {
-        val npcUuid = fifoQueue.poll() ?: return
+    private fun dispatch(server: MinecraftServer, currentTime: Long, interval: Long, minInterval: Long) {
+        val backendConfig = configProvider.llmBackendConfig
+        val maxConcurrentTurns = backendConfig.maxConcurrentTurns
+        // Overdue summaries first, they would otherwise never find idle capacity
+        dispatchSummaries(currentTime, interval, maxConcurrentTurns, overdueOnly = true)
+        if (getRunning() >= maxConcurrentTurns) return
+
+        val players = getPlayers(server)
+        val npcsPerBackend = npcService.uuidToNpc.values.groupingBy { getBackendKey(it) }.eachCount()
+        val availableBackends = HashMap<String, Boolean>()
+
+        // Score the NPCs that are due, sortedByDescending is stable so queue order breaks ties
+        val candidates = fifoQueue.mapNotNull { npcUuid ->
+            val npc = npcService.uuidToNpc[npcUuid] ?: return@mapNotNull null
+            if (currentTime < (retryAfter[npcUuid] ?: 0L)) return@mapNotNull null
+            // Parked while the circuits of all servers of its backend are open
+            val url = npc.config.llmUrl
+            if (!availableBackends.getOrPut(url) { endpointPool.isAvailable(url) }) return@mapNotNull null
+
+            val lastSuccess = lastSuccessfulTrigger[npcUuid] ?: 0L
+            val activity = getActivity(npc, players, lastSuccess, currentTime)
+            if (activity.woken) {
+                return@mapNotNull if (currentTime - lastSuccess >= min(minInterval, WAKE_MIN_GAP_MILLIS)) {
+                    Candidate(npcUuid, npc, activity.score)
+                } else null
+            }
+            val gap = getTurnGap(npc, activity, minInterval, npcsPerBackend[getBackendKey(npc)] ?: 1, backendConfig)
+            val waited = currentTime - lastSuccess
+            if (waited < gap) return@mapNotNull null
+
+            val waitScore = min(waited.toDouble() / max(gap, 1L), MAX_WAIT_SCORE)
+            Candidate(npcUuid, npc, activity.score + waitScore)
+        }.sortedByDescending { it.score }
 
-        // Get NPC reference - check again in executor to handle removal
-        val npc = npcService.uuidToNpc[npcUuid]
-        
-        if (npc == null) {
-            // NPC was removed, skip and put back at end
-            fifoQueue.offer(npcUuid)
-            return
+        for (candidate in candidates) {
+            if (getRunning() >= maxConcurrentTurns) break
+            // A failing backend gets one turn at a time until a request succeeds again
+            val url = candidate.npc.config.llmUrl
+            if (endpointPool.isDegraded(url) && limiter.getInFlight(url) > 0) continue
+            // Backend or model is busy, the NPC keeps its place for the next pass
+            val permit = limiter.tryAcquire(candidate.npc.config.llmUrl, candidate.npc.config.llmModel) ?: continue
+            fifoQueue.remove(candidate.uuid)
+            if (!startTurn(candidate.uuid, candidate.npc, permit, currentTime, interval)) return
         }
 
-        // Check if Y time has passed since last successful processing
-        val lastSuccess = lastSuccessfulTrigger[npcUuid] ?: 0L
-        val timeSinceLastSuccess = currentTime - lastSuccess
+        dispatchSummaries(currentTime, interval, maxConcurrentTurns, overdueOnly = false)
+    }
 
-        if (timeSinceLastSuccess >= minInterval) {
-            // Y time has passed, process the NPC
-            // Capture NPC name for logging (safer than full reference)
-            val npcName = npc.config.npcName
-            executorService.submit {
-                try {
-                    // Re-check NPC exists (could be removed while queued)
-                    val currentNpc = npcService.uuidToNpc[npcUuid]
-                    if (currentNpc == null) {
-                        return@submit
+    /**
+     * Starts the summaries of histories that outgrew their window, as far as the limits allow.
+     */
+    private fun dispatchSummaries(currentTime: Long, interval: Long, maxConcurrentTurns: Int, overdueOnly: Boolean) {
+        for ((npcUuid, npc) in npcService.uuidToNpc) {
+            if (getRunning() >= maxConcurrentTurns) return
+            val history = npc.history
+            val due = if (overdueOnly) history.isSummarizationOverdue else history.isSummarizationDue
+            if (!due || summarizing.contains(npcUuid) || currentTime < (summaryRetryAfter[npcUuid] ?: 0L)) continue
+            val url = npc.config.llmUrl
+            if (!endpointPool.isAvailable(url)) continue
+            val permit = limiter.tryAcquire(url, npc.config.llmModel) ?: continue
+
+            summarizing.add(npcUuid)
+            try {
+                executorService.execute {
+                    try {
+                        if (history.performSummarizationIfNeeded()) {
+                            summaryRetryAfter.remove(npcUuid)
+                        } else {
+                            // Nothing to summarize in the database, do not dispatch it again every tick
+                            summaryRetryAfter[npcUuid] = System.currentTimeMillis() + interval
+                        }
+                    } catch (e: Exception) {
+                        summaryRetryAfter[npcUuid] = System.currentTimeMillis() + interval
+                        LogUtil.error("Error summarizing history of NPC: ${npc.config.npcName}", e)
+                    } finally {
+                        permit.close()
+                        summarizing.remove(npcUuid)
+                        turnCompleted.set(true)
                     }
-                    
+                }
+            } catch (e: Exception) {
+                // Executor is shut down
+                permit.close()
+                summarizing.remove(npcUuid)
+                return
+            }
+        }
+    }
+
+    /**
+     * Gets the number of LLM calls running, turns and summaries.
+     */
+    private fun getRunning(): Int = inFlight.size + summarizing.size
+
+    /**
+     * Starts the turn of an NPC on the executor.
+     * @return false if the executor is shut down
+     */
+    private fun startTurn(
+        npcUuid: UUID,
+        npc: NPC,
+        permit: LLMConcurrencyLimiter.Permit,
+        currentTime: Long,
+        interval: Long
+    ): Boolean {
+        inFlight.add(npcUuid)
+        // The turn handles the wakeup, events from now on wake the NPC again after it
+        wakeupQueue.remove(npcUuid)
+        // Capture NPC name and backend for logging and latency (safer than full reference)
+        val npcName = npc.config.npcName
+        val backendKey = getBackendKey(npc)
+        try {
+            executorService.execute {
+                val start = System.currentTimeMillis()
+                try {
+                    // Re-check NPC exists (could be removed meanwhile)
+                    val currentNpc = npcService.uuidToNpc[npcUuid] ?: return@execute
+                    val skipped = currentNpc.config.isSkipLLMRequests
                     val success = currentNpc.eventHandler.processLLM()
                     if (success) {
                         lastSuccessfulTrigger[npcUuid] = currentTime
+                        retryAfter.remove(npcUuid)
+                        // Only turns the backend answered pace it, skipped turns and failures (e.g. an open
+                        // circuit) end right away and would make the backend look fast when it is not
+                        if (!skipped) {
+                            recordLatency(backendKey, System.currentTimeMillis() - start)
+                        }
+                    } else {
+                        retryAfter[npcUuid] = System.currentTimeMillis() + interval
                     }
                 } catch (e: Exception) {
+                    retryAfter[npcUuid] = System.currentTimeMillis() + interval
                     LogUtil.error("Error processing LLM for NPC: $npcName", e)
                 } finally {
-                    // Always put back at end of queue after processing
-                    fifoQueue.offer(npcUuid)
+                    permit.close()
+                    finishTurn(npcUuid)
                 }
             }
-        } else {
-            // Y time has not passed, skip and put back at end
-            fifoQueue.offer(npcUuid)
+            return true
+        } catch (e: Exception) {
+            // Executor is shut down
+            permit.close()
+            finishTurn(npcUuid)
+            return false
         }
     }
-    
+
+    private fun finishTurn(npcUuid: UUID) {
+        // Always put back at end of queue after processing
+        inFlight.remove(npcUuid)
+        fifoQueue.offer(npcUuid)
+        turnCompleted.set(true)
+    }
+
+    /**
+     * Gets the time an NPC waits between turns. It is the min interval, raised to the time the
+     * backend needs to run one turn for every NPC using it with its concurrency, and a multiple
+     * of that for idle NPCs. NPCs with mail or damage only wait the min interval.
+     */
+    private fun getTurnGap(
+        npc: NPC,
+        activity: Activity,
+        minInterval: Long,
+        npcsOnBackend: Int,
+        backendConfig: LLMBackendConfig
+    ): Long {
+        if (activity.isUrgent) return minInterval
+        val latency = turnLatency[getBackendKey(npc)] ?: 0.0
+        val endpointConcurrency = backendConfig.getEndpointConcurrency(npc.config.llmUrl)
+        val concurrency = if (endpointConcurrency > 0) endpointConcurrency else backendConfig.maxConcurrentTurns
+        val pace = (latency * npcsOnBackend / concurrency).toLong()
+        val gap = max(minInterval, pace)
+        return if (activity.isIdle) gap * IDLE_PACE_FACTOR else gap
+    }
+
+    private fun getActivity(npc: NPC, players: List<ServerPlayerEntity>, lastSuccess: Long, currentTime: Long): Activity {
+        val entity = npc.entity
+        val contextProvider = npc.contextProvider
+        val rangeSquared = NEARBY_PLAYER_RANGE * NEARBY_PLAYER_RANGE
+        return Activity(
+            woken = wakeupQueue.isReady(npc.config.uuid, currentTime, WAKE_DEBOUNCE_MILLIS),
+            unreadMail = npcService.getLatestMailTimestamp(npc.config.uuid) > lastSuccess,
+            recentDamage = currentTime - (lastDamaged[npc.config.uuid] ?: 0L) < RECENT_DAMAGE_MILLIS,
+            playerNearby = players.any { player ->
+                player.getWorld() == entity.getWorld() && player.squaredDistanceTo(entity) <= rangeSquared
+            },
+            busy = !contextProvider.actionStateManager.isIdle || !contextProvider.navigationState.isIdle
+        )
+    }
+
+    /**
+     * Gets the real players, NPCs are players as well.
+     */
+    private fun getPlayers(server: MinecraftServer): List<ServerPlayerEntity> {
+        val npcEntities = npcService.uuidToNpc.values.mapTo(HashSet()) { it.entity.uuid }
+        return server.playerManager.playerList.filter { it.uuid !in npcEntities && !it.isSpectator }
+    }
+
+    private fun recordLatency(backendKey: String, millis: Long) {
+        turnLatency.merge(backendKey, millis.toDouble()) { average, sample ->
+            average + LATENCY_SMOOTHING * (sample - average)
+        }
+    }
+
+    private fun getBackendKey(npc: NPC): String {
+        return LLMConcurrencyLimiter.key(npc.config.llmUrl, npc.config.llmModel)
+    }
+
+    private class Activity(
+        val woken: Boolean,
+        val unreadMail: Boolean,
+        val recentDamage: Boolean,
+        val playerNearby: Boolean,
+        val busy: Boolean
+    ) {
+        val isUrgent get() = unreadMail || recentDamage
+        val isIdle get() = !isUrgent && !playerNearby && !busy
+        val score get() = (if (woken) WAKE_SCORE else 0.0) +
+                (if (unreadMail) MAIL_SCORE else 0.0) +
+                (if (recentDamage) DAMAGE_SCORE else 0.0) +
+                (if (playerNearby) PLAYER_NEARBY_SCORE else 0.0) +
+                (if (busy) BUSY_SCORE else 0.0)
+    }
+
+    private class Candidate(val uuid: UUID, val npc: NPC, val score: Double)
+
     fun shutdown() {
         executorService.shutdown()
         try {
@@ -126,4 +400,3 @@ class LLMProcessingScheduler(
         }
     }
 }
-
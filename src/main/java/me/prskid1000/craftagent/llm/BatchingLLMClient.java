@@ -0,0 +1,55 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.history.ConversationMessage;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.List;
+
+/**
+ * LLM client that sends its requests in the batches of the {@link LLMRequestBatcher},
+ * together with the requests of other NPCs using the same model on the same backend.
+ */
+public class BatchingLLMClient implements LLMClient {
+
+    private final LLMClient delegate;
+    private final LLMRequestBatcher batcher;
+    private final String url;
+    private final String model;
+
+    public BatchingLLMClient(LLMClient delegate, LLMRequestBatcher batcher, String url, String model) {
+        this.delegate = delegate;
+        this.batcher = batcher;
+        this.url = url;
+        this.model = model;
+    }
+
+    @Override
+    public LLMResponse chat(List<ConversationMessage> messages, MinecraftServer server) {
+        try (LLMRequestBatcher.Sending ignored = batcher.join(url, model)) {
+            return delegate.chat(messages, server);
+        }
+    }
+
+    @Override
+    public LLMResponse chatStreaming(List<ConversationMessage> messages, MinecraftServer server,
+                                     StructuredStreamListener listener) {
+        try (LLMRequestBatcher.Sending ignored = batcher.join(url, model)) {
+            return delegate.chatStreaming(messages, server, listener);
+        }
+    }
+
+    @Override
+    public void checkServiceIsReachable() {
+        delegate.checkServiceIsReachable();
+    }
+
+    @Override
+    public void updateTimeout(int timeout) {
+        delegate.updateTimeout(timeout);
+    }
+
+    @Override
+    public void stopService() {
+        delegate.stopService();
+    }
+}
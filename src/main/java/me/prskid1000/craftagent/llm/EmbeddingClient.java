@@ -0,0 +1,21 @@
+package me.prskid1000.craftagent.llm;
+
+import java.util.List;
+
+/**
+ * Turns texts into vectors whose cosine similarity measures how related the texts are.
+ */
+public interface EmbeddingClient {
+
+    /**
+     * Embeds the texts, one normalized vector per text in the same order.
+     *
+     * @throws me.prskid1000.craftagent.exception.CraftAgentException if the embeddings could not be created
+     */
+    List<float[]> embed(List<String> texts);
+
+    /**
+     * Identifies the embedding space, vectors of different ids cannot be compared.
+     */
+    String getId();
+}
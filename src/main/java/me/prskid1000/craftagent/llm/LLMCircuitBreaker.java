@@ -0,0 +1,93 @@
+package me.prskid1000.craftagent.llm;
+
+/**
+ * Circuit breaker of one LLM backend. After a few failed requests in a row the circuit opens
+ * and requests fail right away instead of waiting for the timeout. Once the open time is over
+ * the circuit is half open: a single health probe decides whether it closes again or stays
+ * open for twice as long.
+ */
+public class LLMCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_OPEN_MILLIS = 10_000;
+    private static final long MAX_OPEN_MILLIS = 5 * 60_000;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMillis = MIN_OPEN_MILLIS;
+    private long openUntil;
+
+    /**
+     * Whether requests may be sent, only while the circuit is closed.
+     */
+    public synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Whether the last request failed, the backend may be overloaded.
+     */
+    public synchronized boolean isDegraded() {
+        return state == State.CLOSED && consecutiveFailures > 0;
+    }
+
+    /**
+     * Moves an open circuit to half open once its open time is over.
+     *
+     * @return true if the circuit just became half open and the caller has to probe the backend
+     */
+    public synchronized boolean tryHalfOpen(long currentTime) {
+        if (state != State.OPEN || currentTime < openUntil) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMillis = MIN_OPEN_MILLIS;
+    }
+
+    /**
+     * Records a failed request or probe.
+     *
+     * @return true if the circuit opened because of it
+     */
+    public synchronized boolean recordFailure(long currentTime) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+            open(currentTime);
+            return true;
+        }
+        if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            open(currentTime);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the time in ms until the circuit becomes half open, 0 if it is not open.
+     */
+    public synchronized long getRemainingOpenMillis(long currentTime) {
+        return state == State.OPEN ? Math.max(0, openUntil - currentTime) : 0;
+    }
+
+    private void open(long currentTime) {
+        state = State.OPEN;
+        openUntil = currentTime + openMillis;
+    }
+}
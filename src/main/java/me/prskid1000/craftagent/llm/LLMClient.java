@@ -27,11 +27,33 @@ public interface LLMClient {
         return chat(messages, null);
     }
 
+    /**
+     * Lets the LLM generate a response and streams it, the message and every action are
+     * handed to the listener as soon as they are complete. Clients that cannot stream
+     * return the full response without calling the listener.
+     *
+     * @param messages conversationHistory
+     * @param server The Minecraft server instance
+     * @param listener receives the parts of the response while it is generated
+     * @return LLMResponse containing the full content
+     */
+    default LLMResponse chatStreaming(List<ConversationMessage> messages, MinecraftServer server,
+                                      StructuredStreamListener listener) {
+        return chat(messages, server);
+    }
+
     /**
      * Check if the service is reachable
      */
     void checkServiceIsReachable();
 
+	/**
+	 * Updates the request timeout, e.g. after the base config changed.
+	 *
+	 * @param timeout timeout in seconds
+	 */
+	default void updateTimeout(int timeout) {}
+
 	/**
 	 * Stops the Executor service
 	 */
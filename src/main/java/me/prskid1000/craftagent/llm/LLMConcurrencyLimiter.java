@@ -0,0 +1,96 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.config.LLMBackendConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Counts the LLM turns in flight per backend URL and per model and decides whether
+ * another turn may start. The limits are read from the {@link LLMBackendConfig} on every
+ * acquire, so edits of the config apply to the next turn.
+ */
+public class LLMConcurrencyLimiter {
+
+    private final Supplier<LLMBackendConfig> configSupplier;
+    private final Map<String, Integer> inFlightPerEndpoint = new HashMap<>();
+    private final Map<String, Integer> inFlightPerModel = new HashMap<>();
+    private final Map<String, Integer> inFlightPerEndpointModel = new HashMap<>();
+
+    public LLMConcurrencyLimiter(Supplier<LLMBackendConfig> configSupplier) {
+        this.configSupplier = configSupplier;
+    }
+
+    /**
+     * Takes a slot for a turn against the given backend and model, without blocking.
+     *
+     * @return the permit to release once the turn is done, null if a limit is reached
+     */
+    public synchronized Permit tryAcquire(String url, String model) {
+        LLMBackendConfig config = configSupplier.get();
+        if (isFull(inFlightPerEndpoint, url, config.getEndpointConcurrency(url))
+                || isFull(inFlightPerModel, model, config.getModelConcurrency(model))) {
+            return null;
+        }
+        inFlightPerEndpoint.merge(url, 1, Integer::sum);
+        inFlightPerModel.merge(model, 1, Integer::sum);
+        inFlightPerEndpointModel.merge(key(url, model), 1, Integer::sum);
+        return new Permit(url, model);
+    }
+
+    public synchronized int getInFlight(String url) {
+        return inFlightPerEndpoint.getOrDefault(url, 0);
+    }
+
+    /**
+     * Gets the number of turns in flight that use the model on the backend.
+     */
+    public synchronized int getInFlight(String url, String model) {
+        return inFlightPerEndpointModel.getOrDefault(key(url, model), 0);
+    }
+
+    /**
+     * Gets the key of a model on a backend.
+     */
+    public static String key(String url, String model) {
+        return url + "|" + model;
+    }
+
+    private synchronized void release(Permit permit) {
+        decrement(inFlightPerEndpoint, permit.url);
+        decrement(inFlightPerModel, permit.model);
+        decrement(inFlightPerEndpointModel, key(permit.url, permit.model));
+    }
+
+    private static boolean isFull(Map<String, Integer> inFlight, String key, int limit) {
+        return limit > 0 && inFlight.getOrDefault(key, 0) >= limit;
+    }
+
+    private static void decrement(Map<String, Integer> inFlight, String key) {
+        inFlight.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Slot of one running turn, released exactly once.
+     */
+    public final class Permit implements AutoCloseable {
+        private final String url;
+        private final String model;
+        private boolean released;
+
+        private Permit(String url, String model) {
+            this.url = url;
+            this.model = model;
+        }
+
+        @Override
+        public void close() {
+            synchronized (LLMConcurrencyLimiter.this) {
+                if (released) return;
+                released = true;
+            }
+            release(this);
+        }
+    }
+}
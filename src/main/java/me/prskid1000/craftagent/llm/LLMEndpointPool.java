@@ -0,0 +1,124 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.config.LLMBackendConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Routes the requests of a backend URL to the servers of its pool (see
+ * {@link LLMBackendConfig#getEndpointPool}). A request goes to the available server with the
+ * fewest outstanding requests, the lower measured latency breaks ties. An NPC stays on the
+ * server of its last request as long as that one is not clearly busier than the others, so
+ * the server can reuse the cached prompt prefix of the NPC.
+ */
+public class LLMEndpointPool {
+
+    // Outstanding requests a server may have over the least busy one and still keep its NPCs
+    private static final int STICKY_SLACK = 1;
+    // Weight of the newest latency sample in the moving average
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final LLMHttpClientRegistry httpClients;
+    private final Supplier<LLMBackendConfig> configSupplier;
+    private final Map<String, Integer> outstanding = new HashMap<>();
+    // Moving average of the request duration in ms per server
+    private final Map<String, Double> latency = new HashMap<>();
+
+    public LLMEndpointPool(LLMHttpClientRegistry httpClients, Supplier<LLMBackendConfig> configSupplier) {
+        this.httpClients = httpClients;
+        this.configSupplier = configSupplier;
+    }
+
+    /**
+     * Gets the servers of a backend URL, the URL itself first.
+     */
+    public List<String> getUrls(String url) {
+        List<String> urls = new ArrayList<>();
+        urls.add(url);
+        for (String member : configSupplier.get().getEndpointPool(url)) {
+            if (!urls.contains(member)) {
+                urls.add(member);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Whether any server of the backend URL takes requests.
+     */
+    public boolean isAvailable(String url) {
+        return getUrls(url).stream().anyMatch(httpClients::isAvailable);
+    }
+
+    /**
+     * Whether all available servers of the backend URL failed their last request.
+     */
+    public boolean isDegraded(String url) {
+        return getUrls(url).stream()
+                .filter(httpClients::isAvailable)
+                .allMatch(httpClients::isDegraded);
+    }
+
+    /**
+     * Picks the server for a request and counts it as outstanding until {@link #release}.
+     *
+     * @param url       backend URL of the NPC
+     * @param preferred server of the last request of the NPC, null if none
+     * @param excluded  servers that already failed this request
+     * @return the server, null if no server is left
+     */
+    public synchronized String acquire(String url, String preferred, Collection<String> excluded) {
+        List<String> candidates = getUrls(url).stream()
+                .filter(candidate -> !excluded.contains(candidate))
+                .filter(httpClients::isAvailable)
+                .toList();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        int leastOutstanding = candidates.stream().mapToInt(this::getOutstanding).min().orElse(0);
+        String selected;
+        if (preferred != null && candidates.contains(preferred)
+                && getOutstanding(preferred) <= leastOutstanding + STICKY_SLACK) {
+            selected = preferred;
+        } else {
+            selected = candidates.get(0);
+            for (String candidate : candidates) {
+                if (isBetter(candidate, selected)) {
+                    selected = candidate;
+                }
+            }
+        }
+        outstanding.merge(selected, 1, Integer::sum);
+        return selected;
+    }
+
+    /**
+     * Ends a request, successful requests update the latency of the server.
+     */
+    public synchronized void release(String server, long millis, boolean success) {
+        outstanding.computeIfPresent(server, (k, count) -> count > 1 ? count - 1 : null);
+        if (success) {
+            latency.merge(server, (double) millis, (average, sample) -> average + LATENCY_SMOOTHING * (sample - average));
+        }
+    }
+
+    private boolean isBetter(String candidate, String selected) {
+        int candidateOutstanding = getOutstanding(candidate);
+        int selectedOutstanding = getOutstanding(selected);
+        if (candidateOutstanding != selectedOutstanding) {
+            return candidateOutstanding < selectedOutstanding;
+        }
+        // Servers without measurements yet count as fast, so they get tried
+        return latency.getOrDefault(candidate, 0.0) < latency.getOrDefault(selected, 0.0);
+    }
+
+    private int getOutstanding(String server) {
+        return outstanding.getOrDefault(server, 0);
+    }
+}
@@ -0,0 +1,383 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.config.LLMBackendConfig;
+import me.prskid1000.craftagent.thread.VirtualThreads;
+import me.prskid1000.craftagent.util.LogUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * One shared {@link HttpClient} per LLM backend, used by the clients of all NPCs.
+ * The HTTP client keeps its connections open between requests (HTTP/2 for https, keep-alive
+ * otherwise), so connection setup is not part of an LLM turn. Backends in use are probed
+ * periodically, which keeps a connection warm and lets health checks answer from the last
+ * probe instead of sending a request.
+ * <p>
+ * Each backend has a {@link LLMCircuitBreaker}: failed requests (errors, timeouts, 5xx) open it,
+ * then requests fail right away and the scheduler parks the NPCs of the backend until a health
+ * probe succeeds.
+ * <p>
+ * Timeouts: connect from the {@link LLMBackendConfig}, read set per request by the LLM clients,
+ * total (whole exchange) from the {@link LLMBackendConfig}. The read timeout covers the wait for
+ * the response and, for streamed bodies, each wait for the next line, enforced by a timer, so a
+ * backend that stops sending in the middle of a response does not hold the turn even without
+ * a total timeout.
+ */
+public class LLMHttpClientRegistry {
+
+    private static final long PROBE_INTERVAL_SECONDS = 30;
+    // A probe or response within this time counts as reachable
+    private static final long REACHABLE_MILLIS = 2 * PROBE_INTERVAL_SECONDS * 1000;
+    // Backends without requests for this long are not probed anymore
+    private static final long PROBE_IDLE_MILLIS = 10 * 60 * 1000;
+
+    private final Supplier<LLMBackendConfig> configSupplier;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    // Runs the probes and the total timeouts of streamed responses
+    private final ScheduledExecutorService prober;
+
+    public LLMHttpClientRegistry(Supplier<LLMBackendConfig> configSupplier) {
+        this.configSupplier = configSupplier;
+        // Daemon thread, the registry lives as long as the mod and idle backends are not probed
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CraftAgent-LLM-Probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probeAll, PROBE_INTERVAL_SECONDS, PROBE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets the shared endpoint of a backend.
+     *
+     * @param baseUrl    base URL of the backend, requests go to paths below it
+     * @param healthPath path probed to check the backend, e.g. "/api/tags"
+     */
+    public Endpoint getEndpoint(String baseUrl, String healthPath) {
+        return endpoints.computeIfAbsent(normalize(baseUrl), url -> new Endpoint(url, healthPath));
+    }
+
+    /**
+     * Whether turns may be sent to the backend, false while its circuit is open. Starts the
+     * health probe once the open time is over.
+     */
+    public boolean isAvailable(String baseUrl) {
+        Endpoint endpoint = endpoints.get(normalize(baseUrl));
+        if (endpoint == null) {
+            return true;
+        }
+        if (endpoint.circuitBreaker.tryHalfOpen(System.currentTimeMillis())) {
+            endpoint.probe();
+        }
+        return endpoint.circuitBreaker.isClosed();
+    }
+
+    /**
+     * Whether the last request to the backend failed, it gets one request at a time until one succeeds.
+     */
+    public boolean isDegraded(String baseUrl) {
+        Endpoint endpoint = endpoints.get(normalize(baseUrl));
+        return endpoint != null && endpoint.circuitBreaker.isDegraded();
+    }
+
+    private static String normalize(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    private void probeAll() {
+        long now = System.currentTimeMillis();
+        endpoints.values().forEach(endpoint -> {
+            if (now - endpoint.lastUsed > PROBE_IDLE_MILLIS) {
+                return;
+            }
+            if (endpoint.circuitBreaker.isClosed() || endpoint.circuitBreaker.tryHalfOpen(now)) {
+                endpoint.probe();
+            }
+        });
+    }
+
+    /**
+     * Reads the lines of a streamed body.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        /**
+         * @return false to stop reading, e.g. after the last chunk
+         */
+        boolean onLine(String line) throws IOException;
+    }
+
+    /**
+     * Backend with its shared HTTP client.
+     */
+    public final class Endpoint {
+        private final String baseUrl;
+        private final String healthPath;
+        private final LLMCircuitBreaker circuitBreaker = new LLMCircuitBreaker();
+        private volatile HttpClient httpClient;
+        private volatile int connectTimeoutSeconds;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long lastReachable;
+
+        private Endpoint(String baseUrl, String healthPath) {
+            this.baseUrl = baseUrl;
+            this.healthPath = healthPath;
+        }
+
+        /**
+         * Sends a request with the shared client, limited to the total timeout.
+         * Fails right away while the circuit of the backend is open.
+         */
+        public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+                throws IOException, InterruptedException {
+            return send(request, bodyHandler, true);
+        }
+
+        /**
+         * Sends a side request (e.g. embeddings) like {@link #send}, but its result does not count
+         * for the circuit of the backend: a failing embedding model must not park the NPCs chatting
+         * with the same server.
+         */
+        public <T> HttpResponse<T> sendUntracked(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+                throws IOException, InterruptedException {
+            return send(request, bodyHandler, false);
+        }
+
+        private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, boolean tracked)
+                throws IOException, InterruptedException {
+            lastUsed = System.currentTimeMillis();
+            if (!circuitBreaker.isClosed()) {
+                throw new ConnectException("LLM server at " + baseUrl + " is unavailable, retrying in "
+                        + circuitBreaker.getRemainingOpenMillis(lastUsed) / 1000 + "s");
+            }
+            int totalTimeoutSeconds = configSupplier.get().getTotalTimeoutSeconds();
+            CompletableFuture<HttpResponse<T>> future = getClient().sendAsync(request, bodyHandler);
+            try {
+                HttpResponse<T> response = totalTimeoutSeconds > 0
+                        ? future.get(totalTimeoutSeconds, TimeUnit.SECONDS)
+                        : future.get();
+                // Any answer means the server is up, the caller handles the status
+                lastReachable = System.currentTimeMillis();
+                if (!tracked) {
+                    return response;
+                }
+                if (response.statusCode() >= 500) {
+                    // Overloaded (e.g. Ollama's queue is full) or broken
+                    recordFailure("status code " + response.statusCode());
+                } else {
+                    circuitBreaker.recordSuccess();
+                }
+                return response;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                if (tracked) {
+                    recordFailure("total timeout");
+                }
+                throw new HttpTimeoutException("Request to " + baseUrl + " exceeded the total timeout of " + totalTimeoutSeconds + "s");
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                if (tracked) {
+                    recordFailure(e.getCause().getMessage());
+                }
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Whether the backend answered a request or probe recently.
+         */
+        public boolean isRecentlyReachable() {
+            return System.currentTimeMillis() - lastReachable <= REACHABLE_MILLIS;
+        }
+
+        /**
+         * Reads a streamed body (see {@link HttpResponse.BodyHandlers#ofLines()}) until the handler
+         * stops or the body ends. The request timeout of the LLM clients only covers the wait for
+         * the response headers, so the body is guarded here by a timer, independent of incoming
+         * data: it ends the read once the backend sent nothing for the read timeout or the total
+         * timeout is over. It closes the body, which fails the blocked read, and counts a failure
+         * for the backend. Closing the line stream closes the underlying response stream without
+         * waiting for the reading thread.
+         *
+         * @param lines             the body, closed by the caller
+         * @param startMillis       when the request was sent, the total timeout counts from there
+         * @param readTimeoutMillis longest wait for the next line, the read timeout of the request
+         * @throws HttpTimeoutException if the backend stalled or the body did not end within the total timeout
+         */
+        public void readLines(Stream<String> lines, long startMillis, long readTimeoutMillis, LineHandler handler)
+                throws IOException {
+            long totalTimeoutMillis = getTotalTimeoutMillis();
+            long deadline = totalTimeoutMillis > 0 ? startMillis + totalTimeoutMillis : Long.MAX_VALUE;
+            StreamWatchdog watchdog = new StreamWatchdog(lines, deadline, Math.max(1, readTimeoutMillis));
+            watchdog.schedule(System.currentTimeMillis());
+            try {
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    watchdog.lastRead = System.currentTimeMillis();
+                    if (!handler.onLine(line)) {
+                        break;
+                    }
+                    // Handling the line does not count as waiting for the backend
+                    watchdog.lastRead = System.currentTimeMillis();
+                }
+            } catch (IOException | RuntimeException e) {
+                String reason = watchdog.getExpiredReason();
+                if (reason != null) {
+                    HttpTimeoutException timeout = new HttpTimeoutException("Response from " + baseUrl + " " + reason);
+                    timeout.initCause(e instanceof UncheckedIOException unchecked ? unchecked.getCause() : e);
+                    throw timeout;
+                }
+                throw e;
+            } finally {
+                watchdog.finish();
+            }
+        }
+
+        /**
+         * Gets the total timeout in ms, 0 for none. It covers the whole exchange: {@link #send}
+         * waits for the response with it and {@link #readLines} ends streamed bodies at it.
+         */
+        public long getTotalTimeoutMillis() {
+            return configSupplier.get().getTotalTimeoutSeconds() * 1000L;
+        }
+
+        private HttpClient getClient() {
+            int connectTimeout = configSupplier.get().getConnectTimeoutSeconds();
+            HttpClient client = httpClient;
+            if (client == null || connectTimeout != connectTimeoutSeconds) {
+                synchronized (this) {
+                    client = httpClient;
+                    if (client == null || connectTimeout != connectTimeoutSeconds) {
+                        client = createClient(connectTimeout);
+                        httpClient = client;
+                        connectTimeoutSeconds = connectTimeout;
+                    }
+                }
+            }
+            return client;
+        }
+
+        private HttpClient createClient(int connectTimeout) {
+            return HttpClient.newBuilder()
+                    // HTTP/2 needs TLS (ALPN), plain local servers get persistent HTTP/1.1 connections
+                    .version(baseUrl.startsWith("https") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(Math.max(1, connectTimeout)))
+                    // Response handling runs on the shared (virtual) threads instead of a pool per client
+                    .executor(VirtualThreads.shared())
+                    .build();
+        }
+
+        private void probe() {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + healthPath))
+                    .GET()
+                    .timeout(Duration.ofSeconds(Math.max(1, connectTimeoutSeconds)))
+                    .build();
+            getClient().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error == null && response.statusCode() < 500) {
+                            lastReachable = System.currentTimeMillis();
+                            // Only the probe of a half open circuit closes it, a running server can still be overloaded
+                            if (circuitBreaker.getState() == LLMCircuitBreaker.State.HALF_OPEN) {
+                                circuitBreaker.recordSuccess();
+                                LogUtil.info("LLM server at " + baseUrl + " is available again");
+                            }
+                        } else {
+                            recordFailure(error != null ? error.getMessage() : "status code " + response.statusCode());
+                        }
+                    });
+        }
+
+        private void recordFailure(String reason) {
+            long currentTime = System.currentTimeMillis();
+            if (circuitBreaker.recordFailure(currentTime)) {
+                LogUtil.error("LLM server at " + baseUrl + " is unavailable (" + reason + "), pausing its requests for "
+                        + circuitBreaker.getRemainingOpenMillis(currentTime) / 1000 + "s");
+            }
+        }
+
+        /**
+         * Ends the reading of a streamed body once it stalls or reaches its deadline, unless it finished before.
+         * One timer at a time, it is moved on while lines arrive instead of being set per line.
+         */
+        private final class StreamWatchdog {
+            private final Stream<String> lines;
+            private final long deadline;
+            private final long readTimeoutMillis;
+            private volatile long lastRead = System.currentTimeMillis();
+            private boolean reading = true;
+            private String expiredReason;
+            private ScheduledFuture<?> timer;
+
+            private StreamWatchdog(Stream<String> lines, long deadline, long readTimeoutMillis) {
+                this.lines = lines;
+                this.deadline = deadline;
+                this.readTimeoutMillis = readTimeoutMillis;
+            }
+
+            private synchronized void schedule(long now) {
+                if (!reading) {
+                    return;
+                }
+                long next = Math.min(deadline, lastRead + readTimeoutMillis);
+                timer = prober.schedule(this::check, Math.max(0, next - now), TimeUnit.MILLISECONDS);
+            }
+
+            private void check() {
+                long now = System.currentTimeMillis();
+                synchronized (this) {
+                    if (!reading) {
+                        return;
+                    }
+                    if (now >= deadline) {
+                        expiredReason = "exceeded the total timeout of " + getTotalTimeoutMillis() / 1000 + "s";
+                    } else if (now - lastRead >= readTimeoutMillis) {
+                        expiredReason = "sent nothing for " + readTimeoutMillis / 1000 + "s";
+                    } else {
+                        schedule(now);
+                        return;
+                    }
+                }
+                lines.close();
+                recordFailure("stream " + expiredReason);
+            }
+
+            private synchronized String getExpiredReason() {
+                return expiredReason;
+            }
+
+            private synchronized void finish() {
+                reading = false;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+        }
+    }
+}
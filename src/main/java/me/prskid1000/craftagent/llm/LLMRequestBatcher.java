@@ -0,0 +1,120 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.config.LLMBackendConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lines up the requests of NPC turns that use the same model on the same backend.
+ * Neither Ollama nor LM Studio has a batch endpoint for chat, but both process requests
+ * that arrive together as parallel sequences in one batch. Turns of the same model are
+ * started together by the scheduler but reach their request at different times (context
+ * collection, summarization), so the first request waits a short window for the other turns
+ * of its model and all of them are sent at once. A request is sent right away when no other
+ * turn of its model is still preparing its request.
+ */
+public class LLMRequestBatcher {
+
+    private final LLMConcurrencyLimiter limiter;
+    private final Supplier<LLMBackendConfig> configSupplier;
+    private final Map<String, Batch> openBatches = new HashMap<>();
+    // Requests of each model that are being sent or are waiting for their response
+    private final Map<String, Integer> sending = new HashMap<>();
+
+    public LLMRequestBatcher(LLMConcurrencyLimiter limiter, Supplier<LLMBackendConfig> configSupplier) {
+        this.limiter = limiter;
+        this.configSupplier = configSupplier;
+    }
+
+    /**
+     * Joins the batch of the model and blocks until the batch is sent, at most for the
+     * batch window. The returned handle must be closed once the response was received.
+     */
+    public Sending join(String url, String model) {
+        String key = LLMConcurrencyLimiter.key(url, model);
+        long windowMillis = configSupplier.get().getBatchWindowMillis();
+        if (windowMillis <= 0) {
+            return startSending(key);
+        }
+
+        Batch batch;
+        boolean leader;
+        synchronized (this) {
+            batch = openBatches.get(key);
+            leader = batch == null;
+            if (leader) {
+                batch = new Batch();
+                openBatches.put(key, batch);
+            }
+            batch.size++;
+            if (batch.size >= getExpectedBatchSize(url, model, key)) {
+                closeBatch(key, batch);
+            }
+        }
+
+        try {
+            if (leader) {
+                batch.released.await(windowMillis, TimeUnit.MILLISECONDS);
+            } else {
+                // The leader closes the batch at the end of the window at the latest
+                batch.released.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                closeBatch(key, batch);
+            }
+        }
+        return startSending(key);
+    }
+
+    /**
+     * Gets the number of turns of the model that have not sent their request yet.
+     */
+    private int getExpectedBatchSize(String url, String model, String key) {
+        return Math.max(1, limiter.getInFlight(url, model) - sending.getOrDefault(key, 0));
+    }
+
+    private void closeBatch(String key, Batch batch) {
+        openBatches.remove(key, batch);
+        batch.released.countDown();
+    }
+
+    private synchronized Sending startSending(String key) {
+        sending.merge(key, 1, Integer::sum);
+        return new Sending(key);
+    }
+
+    private synchronized void finishSending(String key) {
+        sending.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static final class Batch {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private int size;
+    }
+
+    /**
+     * Request that was sent, closed once its response was received.
+     */
+    public final class Sending implements AutoCloseable {
+        private final String key;
+        private boolean closed;
+
+        private Sending(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            finishSending(key);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package me.prskid1000.craftagent.llm;
+
+import me.prskid1000.craftagent.exception.CraftAgentException;
+import me.prskid1000.craftagent.history.ConversationMessage;
+import me.prskid1000.craftagent.util.LogUtil;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * LLM client of one NPC that sends each request to a server of the pool of its backend URL,
+ * chosen by the {@link LLMEndpointPool}. A failed request is sent to the next server, unless
+ * parts of a streamed response were already handed on.
+ */
+public class PooledLLMClient implements LLMClient {
+
+    private final String url;
+    private final LLMEndpointPool pool;
+    private final Function<String, LLMClient> clientFactory;
+    private final Map<String, LLMClient> clients = new ConcurrentHashMap<>();
+    // Server of the last successful request, its prompt cache holds the prefix of this NPC
+    private volatile String stickyUrl;
+
+    /**
+     * @param url           backend URL from the config of the NPC
+     * @param pool          the shared pool state
+     * @param clientFactory creates the client for a server URL
+     */
+    public PooledLLMClient(String url, LLMEndpointPool pool, Function<String, LLMClient> clientFactory) {
+        this.url = url;
+        this.pool = pool;
+        this.clientFactory = clientFactory;
+    }
+
+    @Override
+    public LLMResponse chat(List<ConversationMessage> messages, MinecraftServer server) {
+        return send(client -> client.chat(messages, server), new StreamProgress(null));
+    }
+
+    @Override
+    public LLMResponse chatStreaming(List<ConversationMessage> messages, MinecraftServer server,
+                                     StructuredStreamListener listener) {
+        StreamProgress progress = new StreamProgress(listener);
+        return send(client -> client.chatStreaming(messages, server, progress), progress);
+    }
+
+    private LLMResponse send(Function<LLMClient, LLMResponse> request, StreamProgress progress) {
+        Set<String> failed = new HashSet<>();
+        CraftAgentException lastError = null;
+        while (true) {
+            String server = pool.acquire(url, stickyUrl, failed);
+            if (server == null) {
+                throw lastError != null ? lastError : CraftAgentException.llmService("No LLM server is available for: " + url);
+            }
+            long start = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                LLMResponse response = request.apply(getClient(server));
+                success = true;
+                stickyUrl = server;
+                return response;
+            } catch (CraftAgentException e) {
+                // Actions of a partly streamed response may already run, it must not be generated again
+                if (progress.started) {
+                    throw e;
+                }
+                lastError = e;
+                failed.add(server);
+                LogUtil.info("LLM request to " + server + " failed, trying the next server of " + url + ": " + e.getMessage());
+            } finally {
+                pool.release(server, System.currentTimeMillis() - start, success);
+            }
+        }
+    }
+
+    /**
+     * Reachable if any server of the pool is.
+     */
+    @Override
+    public void checkServiceIsReachable() {
+        CraftAgentException lastError = null;
+        for (String server : pool.getUrls(url)) {
+            try {
+                getClient(server).checkServiceIsReachable();
+                return;
+            } catch (CraftAgentException e) {
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public void updateTimeout(int timeout) {
+        clients.values().forEach(client -> client.updateTimeout(timeout));
+    }
+
+    @Override
+    public void stopService() {
+        clients.values().forEach(LLMClient::stopService);
+    }
+
+    private LLMClient getClient(String server) {
+        return clients.computeIfAbsent(server, clientFactory);
+    }
+
+    /**
+     * Passes the streamed parts on and remembers whether any was.
+     */
+    private static final class StreamProgress implements StructuredStreamListener {
+        private final StructuredStreamListener listener;
+        private volatile boolean started;
+
+        private StreamProgress(StructuredStreamListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessage(String message) {
+            started = true;
+            listener.onMessage(message);
+        }
+
+        @Override
+        public void onAction(String action) {
+            started = true;
+            listener.onAction(action);
+        }
+    }
+}
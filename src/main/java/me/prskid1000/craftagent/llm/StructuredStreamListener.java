@@ -0,0 +1,18 @@
+package me.prskid1000.craftagent.llm;
+
+/**
+ * Receives the parts of a structured response ({"message": ..., "actions": [...]})
+ * while the LLM is still generating it. Called on the thread reading the response.
+ */
+public interface StructuredStreamListener {
+
+    /**
+     * Called once the message field is complete.
+     */
+    void onMessage(String message);
+
+    /**
+     * Called for every action as soon as its array element is complete, in order.
+     */
+    void onAction(String action);
+}
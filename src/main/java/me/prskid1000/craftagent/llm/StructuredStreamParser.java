@@ -0,0 +1,112 @@
+package me.prskid1000.craftagent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import me.prskid1000.craftagent.util.LogUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser for a structured response that arrives in chunks.
+ * Uses the non-blocking Jackson parser, so every chunk is parsed once and the message and
+ * each action are handed to the listener as soon as their JSON value is complete.
+ * Text before the opening brace (e.g. a markdown code fence) and after the closing brace
+ * is skipped. On malformed JSON the parser stops emitting, the caller falls back to
+ * parsing the full response with {@link StructuredLLMResponse#parse(String)}.
+ */
+public class StructuredStreamParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final StructuredStreamListener listener;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+    private boolean finished;
+    private boolean failed;
+    private int depth;
+    private String currentField;
+    private boolean inActions;
+
+    public StructuredStreamParser(StructuredStreamListener listener) {
+        this.listener = listener;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create streaming JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Parses the next chunk of the response.
+     */
+    public void feed(String chunk) {
+        if (finished || failed || chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return;
+            }
+            chunk = chunk.substring(start);
+            started = true;
+        }
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException e) {
+            failed = true;
+            LogUtil.info("Could not parse streamed response, waiting for the full response: " + e.getMessage());
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT -> depth++;
+            case START_ARRAY -> {
+                if (depth == 1 && "actions".equals(currentField)) {
+                    inActions = true;
+                }
+                depth++;
+            }
+            case END_ARRAY -> {
+                depth--;
+                if (depth == 1) {
+                    inActions = false;
+                }
+            }
+            case END_OBJECT -> {
+                depth--;
+                if (depth == 0) {
+                    finished = true;
+                }
+            }
+            case FIELD_NAME -> {
+                if (depth == 1) {
+                    currentField = parser.currentName();
+                }
+            }
+            case VALUE_STRING -> {
+                if (depth == 1 && "message".equals(currentField)) {
+                    listener.onMessage(parser.getText());
+                } else if ((depth == 1 || inActions && depth == 2) && "actions".equals(currentField)) {
+                    // Actions may also be a single string
+                    listener.onAction(parser.getText());
+                }
+            }
+            default -> {
+                // Other values are not part of the structured response
+            }
+        }
+    }
+}
@@ -7,24 +7,30 @@ import me.prskid1000.craftagent.history.ConversationMessage;
 import me.prskid1000.craftagent.llm.LLMClient;
 import me.prskid1000.craftagent.llm.LLMResponse;
 import me.prskid1000.craftagent.llm.LLMSchema;
+import me.prskid1000.craftagent.llm.StructuredStreamListener;
+import me.prskid1000.craftagent.llm.StructuredStreamParser;
+import me.prskid1000.craftagent.llm.LLMHttpClientRegistry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class LMStudioClient implements LLMClient {
 
 	private final String model;
 	private final String baseUrl;
 	private volatile int timeout;
-	private volatile HttpClient httpClient;
+	private final int keepAliveMinutes;
+	private final LLMHttpClientRegistry.Endpoint endpoint;
 	private final ObjectMapper objectMapper;
 
 	/**
@@ -33,30 +39,26 @@ public class LMStudioClient implements LLMClient {
 	 *
 	 * @param model the model name to use
 	 * @param baseUrl the base URL for LM Studio (typically http://localhost:1234/v1)
-	 * @param timeout the timeout in seconds
+	 * @param timeout the read timeout in seconds
+	 * @param keepAliveMinutes how long LM Studio keeps the model loaded after a request
+	 * @param httpClients the shared connections to the LLM servers
 	 */
-	public LMStudioClient(String model, String baseUrl, int timeout) {
+	public LMStudioClient(String model, String baseUrl, int timeout, int keepAliveMinutes, LLMHttpClientRegistry httpClients) {
 		this.model = model;
 		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
 		this.timeout = timeout;
-		this.httpClient = createHttpClient(timeout);
+		this.keepAliveMinutes = keepAliveMinutes;
+		// Connections are shared with all other clients of this server
+		this.endpoint = httpClients.getEndpoint(this.baseUrl, "/models");
 		this.objectMapper = new ObjectMapper();
 	}
 	
 	/**
-	 * Updates the timeout value and recreates the HTTP client in real-time.
-	 * This allows configuration changes to take effect without restarting.
+	 * Updates the read timeout in real-time, it applies to the next request.
 	 */
+	@Override
 	public void updateTimeout(int newTimeout) {
 		this.timeout = newTimeout;
-		this.httpClient = createHttpClient(newTimeout);
-	}
-	
-	private HttpClient createHttpClient(int timeoutSeconds) {
-		return HttpClient.newBuilder()
-				.version(HttpClient.Version.HTTP_1_1)
-				.connectTimeout(Duration.ofSeconds(timeoutSeconds))
-				.build();
 	}
 
 	@Override
@@ -65,13 +67,16 @@ public class LMStudioClient implements LLMClient {
 			if (baseUrl == null || baseUrl.isEmpty()) {
 				throw CraftAgentException.llmService("LM Studio base URL is not set");
 			}
+			if (endpoint.isRecentlyReachable()) {
+				return;
+			}
 			
 			HttpRequest request = HttpRequest.newBuilder()
 					.uri(URI.create(baseUrl + "/models"))
 					.GET()
 					.timeout(Duration.ofSeconds(timeout))
 					.build();
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			HttpResponse<String> response = endpoint.send(request, HttpResponse.BodyHandlers.ofString());
 			
 			// Accept any 2xx or 3xx status codes, or 401 (unauthorized but server is reachable)
 			int statusCode = response.statusCode();
@@ -97,45 +102,12 @@ public class LMStudioClient implements LLMClient {
 	@Override
 	public LLMResponse chat(List<ConversationMessage> messages, net.minecraft.server.MinecraftServer server) {
 		try {
-			// Convert messages to OpenAI-compatible format (same as Ollama format)
-			List<Map<String, String>> openaiMessages = new ArrayList<>();
-			for (ConversationMessage msg : messages) {
-				Map<String, String> openaiMsg = new HashMap<>();
-				openaiMsg.put("role", msg.getRole());
-				openaiMsg.put("content", msg.getMessage());
-				openaiMessages.add(openaiMsg);
-			}
-			
-			// Build request body
-			Map<String, Object> requestBody = new HashMap<>();
-			requestBody.put("model", model);
-			requestBody.put("messages", openaiMessages);
-			requestBody.put("stream", false);
-			// Add response_format for structured output
-			// Use json_schema type (not json_object) - LM Studio only accepts "json_schema" or "text"
-			Map<String, Object> responseFormat = new HashMap<>();
-			responseFormat.put("type", "json_schema");
-			Map<String, Object> jsonSchema = new HashMap<>();
-			jsonSchema.put("name", "message_schema");
-			jsonSchema.put("schema", LLMSchema.getMessageSchema());
-			jsonSchema.put("strict", true);
-			responseFormat.put("json_schema", jsonSchema);
-			requestBody.put("response_format", responseFormat);
-			
-			String requestBodyJson = objectMapper.writeValueAsString(requestBody);
+			HttpRequest request = createChatRequest(messages, false);
 
 			LogUtil.debugInChat("LLM Request sent to LM Studio");
 
-			// Create HTTP request
-			HttpRequest request = HttpRequest.newBuilder()
-					.uri(URI.create(baseUrl + "/chat/completions"))
-					.header("Content-Type", "application/json")
-					.POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
-					.timeout(Duration.ofSeconds(timeout))
-					.build();
-
 			// Send request and get response
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			HttpResponse<String> response = endpoint.send(request, HttpResponse.BodyHandlers.ofString());
 
 			LogUtil.debugInChat("LLM Response received from LM Studio");
 
@@ -163,6 +135,101 @@ public class LMStudioClient implements LLMClient {
 		}
 	}
 
+	/**
+	 * Streams the response. LM Studio sends server-sent events, "data: {...}" lines with the
+	 * next piece of the content in choices[0].delta.content, ending with "data: [DONE]".
+	 */
+	@Override
+	public LLMResponse chatStreaming(List<ConversationMessage> messages, net.minecraft.server.MinecraftServer server,
+									 StructuredStreamListener listener) {
+		try {
+			HttpRequest request = createChatRequest(messages, true);
+
+			LogUtil.debugInChat("LLM Request sent to LM Studio (streaming)");
+
+			long start = System.currentTimeMillis();
+			HttpResponse<Stream<String>> response = endpoint.send(request, HttpResponse.BodyHandlers.ofLines());
+			try (Stream<String> lines = response.body()) {
+				if (response.statusCode() != 200) {
+					throw CraftAgentException.llmService("LM Studio API returned status code: " + response.statusCode() +
+							", response: " + lines.collect(Collectors.joining("\n")));
+				}
+
+				StructuredStreamParser parser = new StructuredStreamParser(listener);
+				StringBuilder content = new StringBuilder();
+				endpoint.readLines(lines, start, timeout * 1000L, line -> {
+					if (!line.startsWith("data:")) {
+						return true;
+					}
+					String data = line.substring(5).trim();
+					if (data.equals("[DONE]")) {
+						return false;
+					}
+					Map<String, Object> chunk = objectMapper.readValue(data, Map.class);
+					if (chunk.get("error") != null) {
+						throw CraftAgentException.llmService("LM Studio API returned error: " + chunk.get("error"));
+					}
+					if (chunk.get("choices") instanceof List<?> choices && !choices.isEmpty()
+							&& choices.get(0) instanceof Map<?, ?> choice
+							&& choice.get("delta") instanceof Map<?, ?> delta
+							&& delta.get("content") instanceof String deltaContent) {
+						content.append(deltaContent);
+						parser.feed(deltaContent);
+					}
+					return true;
+				});
+
+				LogUtil.debugInChat("LLM Response received from LM Studio");
+				return new LLMResponse(content.toString());
+			}
+		} catch (CraftAgentException e) {
+			throw e;
+		} catch (Exception e) {
+			throw CraftAgentException.llmService("Could not generate Response for prompt: " + messages.get(messages.size() - 1).getMessage(), e);
+		}
+	}
+
+	private HttpRequest createChatRequest(List<ConversationMessage> messages, boolean stream) throws IOException {
+		// Convert messages to OpenAI-compatible format (same as Ollama format)
+		List<Map<String, String>> openaiMessages = new ArrayList<>();
+		for (ConversationMessage msg : messages) {
+			Map<String, String> openaiMsg = new HashMap<>();
+			openaiMsg.put("role", msg.getRole());
+			openaiMsg.put("content", msg.getMessage());
+			openaiMessages.add(openaiMsg);
+		}
+		
+		// Build request body
+		Map<String, Object> requestBody = new HashMap<>();
+		requestBody.put("model", model);
+		requestBody.put("messages", openaiMessages);
+		requestBody.put("stream", stream);
+		// Add response_format for structured output
+		// Use json_schema type (not json_object) - LM Studio only accepts "json_schema" or "text"
+		Map<String, Object> responseFormat = new HashMap<>();
+		responseFormat.put("type", "json_schema");
+		Map<String, Object> jsonSchema = new HashMap<>();
+		jsonSchema.put("name", "message_schema");
+		jsonSchema.put("schema", LLMSchema.getMessageSchema());
+		jsonSchema.put("strict", true);
+		responseFormat.put("json_schema", jsonSchema);
+		requestBody.put("response_format", responseFormat);
+		// Idle time to live of a just-in-time loaded model, keeps it (and its prompt cache) loaded between turns
+		if (keepAliveMinutes > 0) {
+			requestBody.put("ttl", keepAliveMinutes * 60);
+		}
+		
+		String requestBodyJson = objectMapper.writeValueAsString(requestBody);
+
+		// Create HTTP request
+		return HttpRequest.newBuilder()
+				.uri(URI.create(baseUrl + "/chat/completions"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+				.timeout(Duration.ofSeconds(timeout))
+				.build();
+	}
+
 	@Override
 	public void stopService() {
 		// There's nothing to stop for LM Studio
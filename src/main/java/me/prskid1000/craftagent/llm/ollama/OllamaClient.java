@@ -5,8 +5,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import me.prskid1000.craftagent.exception.CraftAgentException;
 import me.prskid1000.craftagent.util.LogUtil;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
@@ -14,51 +14,53 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import me.prskid1000.craftagent.history.ConversationMessage;
 import me.prskid1000.craftagent.llm.LLMClient;
+import me.prskid1000.craftagent.llm.LLMHttpClientRegistry;
 import me.prskid1000.craftagent.llm.StructuredOutputSchema;
 import me.prskid1000.craftagent.llm.LLMResponse;
 import me.prskid1000.craftagent.llm.LLMSchema;
+import me.prskid1000.craftagent.llm.StructuredStreamListener;
+import me.prskid1000.craftagent.llm.StructuredStreamParser;
 
 public class OllamaClient implements LLMClient {
 
 	private final String model;
 	private final String url;
 	private volatile int timeout;
-	private volatile HttpClient httpClient;
+	private final int keepAliveMinutes;
+	private final LLMHttpClientRegistry.Endpoint endpoint;
 	private final ObjectMapper objectMapper;
 
 	public OllamaClient(
         String model,
 		String url,
 		int timeout,
-		boolean verbose
+		boolean verbose,
+		int keepAliveMinutes,
+		LLMHttpClientRegistry httpClients
 	) {
 		this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
 		this.model = model;
 		this.timeout = timeout;
+		this.keepAliveMinutes = keepAliveMinutes;
 		
 		// Configure ObjectMapper to ignore unknown properties (like "thinking" field)
 		this.objectMapper = new ObjectMapper()
 				.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-		this.httpClient = createHttpClient(timeout);
+		// Connections are shared with all other clients of this server
+		this.endpoint = httpClients.getEndpoint(this.url, "/api/tags");
 	}
 	
 	/**
-	 * Updates the timeout value and recreates the HTTP client in real-time.
-	 * This allows configuration changes to take effect without restarting.
+	 * Updates the read timeout in real-time, it applies to the next request.
 	 */
+	@Override
 	public void updateTimeout(int newTimeout) {
 		this.timeout = newTimeout;
-		this.httpClient = createHttpClient(newTimeout);
-	}
-	
-	private HttpClient createHttpClient(int timeoutSeconds) {
-		return HttpClient.newBuilder()
-				.version(HttpClient.Version.HTTP_1_1)
-				.connectTimeout(Duration.ofSeconds(timeoutSeconds))
-				.build();
 	}
 
 	/**
@@ -67,6 +69,9 @@ public class OllamaClient implements LLMClient {
 	 */
 	@Override
 	public void checkServiceIsReachable() {
+		if (endpoint.isRecentlyReachable()) {
+			return;
+		}
 		try {
 			// Simple health check using the /api/tags endpoint
 			HttpRequest request = HttpRequest.newBuilder()
@@ -75,7 +80,7 @@ public class OllamaClient implements LLMClient {
 					.timeout(Duration.ofSeconds(timeout))
 					.build();
 			
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			HttpResponse<String> response = endpoint.send(request, HttpResponse.BodyHandlers.ofString());
 			
 			if (response.statusCode() != 200) {
 				throw CraftAgentException.llmService("Ollama server is not reachable at: " + url);
@@ -136,39 +141,12 @@ public class OllamaClient implements LLMClient {
 	@Override
 	public LLMResponse chat(List<ConversationMessage> messages, net.minecraft.server.MinecraftServer server) {
 		try {
-			// Convert messages to Ollama format
-			List<Map<String, String>> ollamaMessages = new ArrayList<>();
-			for (ConversationMessage msg : messages) {
-				Map<String, String> ollamaMsg = new HashMap<>();
-				ollamaMsg.put("role", msg.getRole());
-				ollamaMsg.put("content", msg.getMessage());
-				ollamaMessages.add(ollamaMsg);
-			}
-			
-			// Build request body
-			Map<String, Object> requestBody = new HashMap<>();
-			requestBody.put("model", model);
-			requestBody.put("messages", ollamaMessages);
-			requestBody.put("stream", false);
-			// Use format for structured output
-			requestBody.put("format", LLMSchema.getMessageSchema());
-			// Set temperature to 0 for deterministic outputs
-			requestBody.put("temperature", 0);
-			
-			String requestBodyJson = objectMapper.writeValueAsString(requestBody);
+			HttpRequest request = createChatRequest(messages, false);
 			
 			LogUtil.debugInChat("LLM Request sent to Ollama");
 			
-			// Create HTTP request
-			HttpRequest request = HttpRequest.newBuilder()
-					.uri(URI.create(url + "/api/chat"))
-					.header("Content-Type", "application/json")
-					.POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
-					.timeout(Duration.ofSeconds(timeout))
-					.build();
-			
 			// Send request and get response
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			HttpResponse<String> response = endpoint.send(request, HttpResponse.BodyHandlers.ofString());
 			
 			LogUtil.debugInChat("LLM Response received from Ollama");
 			
@@ -195,6 +173,89 @@ public class OllamaClient implements LLMClient {
 		}
 	}
 
+	/**
+	 * Streams the response. Ollama sends one JSON object per line, each with the next
+	 * piece of the content, the last one with "done": true.
+	 */
+	@Override
+	public LLMResponse chatStreaming(List<ConversationMessage> messages, net.minecraft.server.MinecraftServer server,
+									 StructuredStreamListener listener) {
+		try {
+			HttpRequest request = createChatRequest(messages, true);
+			
+			LogUtil.debugInChat("LLM Request sent to Ollama (streaming)");
+			
+			long start = System.currentTimeMillis();
+			HttpResponse<Stream<String>> response = endpoint.send(request, HttpResponse.BodyHandlers.ofLines());
+			try (Stream<String> lines = response.body()) {
+				if (response.statusCode() != 200) {
+					throw CraftAgentException.llmService("Ollama API returned status code: " + response.statusCode() +
+							", response: " + lines.collect(Collectors.joining("\n")));
+				}
+				
+				StructuredStreamParser parser = new StructuredStreamParser(listener);
+				StringBuilder content = new StringBuilder();
+				endpoint.readLines(lines, start, timeout * 1000L, line -> {
+					if (line.isBlank()) {
+						return true;
+					}
+					Map<String, Object> chunk = objectMapper.readValue(line, Map.class);
+					if (chunk.get("error") != null) {
+						throw CraftAgentException.llmService("Ollama API returned error: " + chunk.get("error"));
+					}
+					if (chunk.get("message") instanceof Map<?, ?> messageMap
+							&& messageMap.get("content") instanceof String delta) {
+						content.append(delta);
+						parser.feed(delta);
+					}
+					return !Boolean.TRUE.equals(chunk.get("done"));
+				});
+				
+				LogUtil.debugInChat("LLM Response received from Ollama");
+				return new LLMResponse(content.toString());
+			}
+		} catch (CraftAgentException e) {
+			throw e;
+		} catch (Exception e) {
+			throw CraftAgentException.llmService("Could not generate Response for last prompt: " + messages.get(messages.size() - 1).getMessage(), e);
+		}
+	}
+
+	private HttpRequest createChatRequest(List<ConversationMessage> messages, boolean stream) throws IOException {
+		// Convert messages to Ollama format
+		List<Map<String, String>> ollamaMessages = new ArrayList<>();
+		for (ConversationMessage msg : messages) {
+			Map<String, String> ollamaMsg = new HashMap<>();
+			ollamaMsg.put("role", msg.getRole());
+			ollamaMsg.put("content", msg.getMessage());
+			ollamaMessages.add(ollamaMsg);
+		}
+		
+		// Build request body
+		Map<String, Object> requestBody = new HashMap<>();
+		requestBody.put("model", model);
+		requestBody.put("messages", ollamaMessages);
+		requestBody.put("stream", stream);
+		// Use format for structured output
+		requestBody.put("format", LLMSchema.getMessageSchema());
+		// Set temperature to 0 for deterministic outputs
+		requestBody.put("temperature", 0);
+		// Keep the model (and with it the prompt cache) loaded between turns
+		if (keepAliveMinutes > 0) {
+			requestBody.put("keep_alive", keepAliveMinutes + "m");
+		}
+		
+		String requestBodyJson = objectMapper.writeValueAsString(requestBody);
+		
+		// Create HTTP request
+		return HttpRequest.newBuilder()
+				.uri(URI.create(url + "/api/chat"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+				.timeout(Duration.ofSeconds(timeout))
+				.build();
+	}
+
 	@Override
 	public void stopService() {
 		// Nothing to stop
@@ -0,0 +1,93 @@
+package me.prskid1000.craftagent.llm.ollama;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.prskid1000.craftagent.exception.CraftAgentException;
+import me.prskid1000.craftagent.llm.EmbeddingClient;
+import me.prskid1000.craftagent.llm.LLMHttpClientRegistry;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeddings from a local Ollama server (/api/embed), all texts in one request.
+ */
+public class OllamaEmbeddingClient implements EmbeddingClient {
+
+	private final String model;
+	private final String url;
+	private final int timeout;
+	private final LLMHttpClientRegistry.Endpoint endpoint;
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	public OllamaEmbeddingClient(String model, String url, int timeout, LLMHttpClientRegistry httpClients) {
+		this.model = model;
+		this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		this.timeout = timeout;
+		this.endpoint = httpClients.getEndpoint(this.url, "/api/tags");
+	}
+
+	@Override
+	public List<float[]> embed(List<String> texts) {
+		if (texts.isEmpty()) {
+			return List.of();
+		}
+		try {
+			Map<String, Object> requestBody = new HashMap<>();
+			requestBody.put("model", model);
+			requestBody.put("input", texts);
+			HttpRequest request = HttpRequest.newBuilder()
+					.uri(URI.create(url + "/api/embed"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+					.timeout(Duration.ofSeconds(timeout))
+					.build();
+
+			// Shares the connection of the chat backend, but not its circuit
+			HttpResponse<String> response = endpoint.sendUntracked(request, HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() != 200) {
+				throw CraftAgentException.llmService("Ollama embed API returned status code: " + response.statusCode() +
+						", response: " + response.body());
+			}
+
+			Map<String, Object> responseMap = objectMapper.readValue(response.body(), Map.class);
+			if (!(responseMap.get("embeddings") instanceof List<?> embeddings) || embeddings.size() != texts.size()) {
+				throw CraftAgentException.llmService("Ollama embed API response missing 'embeddings' for all inputs");
+			}
+			List<float[]> vectors = new ArrayList<>(embeddings.size());
+			for (Object embedding : embeddings) {
+				List<?> values = (List<?>) embedding;
+				float[] vector = new float[values.size()];
+				for (int i = 0; i < vector.length; i++) {
+					vector[i] = ((Number) values.get(i)).floatValue();
+				}
+				vectors.add(vector);
+			}
+			return vectors;
+		} catch (CraftAgentException e) {
+			throw e;
+		} catch (Exception e) {
+			throw CraftAgentException.llmService("Could not create embeddings with model: " + model, e);
+		}
+	}
+
+	@Override
+	public String getId() {
+		return id(url, model);
+	}
+
+	/**
+	 * Gets the id of the embeddings of a model on a server.
+	 */
+	public static String id(String url, String model) {
+		String baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		return "ollama:" + baseUrl + ":" + model;
+	}
+}
@@ -0,0 +1,50 @@
+package me.prskid1000.craftagent.memory
+
+import me.prskid1000.craftagent.llm.EmbeddingClient
+import kotlin.math.sqrt
+
+/**
+ * Embeddings without a model: words and character trigrams are hashed into a fixed number
+ * of dimensions. Texts sharing words (or parts of them, e.g. "iron" and "iron_ore") end up close.
+ * Used when no embedding model is configured or the embedding server is not reachable.
+ */
+class HashedNgramEmbedder : EmbeddingClient {
+
+    companion object {
+        private const val DIMENSIONS = 512
+        private const val WORD_WEIGHT = 1.0f
+        private const val TRIGRAM_WEIGHT = 0.5f
+        private val WORD_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+    }
+
+    override fun embed(texts: List<String>): List<FloatArray> = texts.map { embed(it) }
+
+    override fun getId(): String = "hashed-ngram:$DIMENSIONS"
+
+    private fun embed(text: String): FloatArray {
+        val vector = FloatArray(DIMENSIONS)
+        text.lowercase().split(WORD_SEPARATOR).filter { it.isNotEmpty() }.forEach { word ->
+            add(vector, word, WORD_WEIGHT)
+            val padded = "#$word#"
+            for (i in 0..padded.length - 3) {
+                add(vector, padded.substring(i, i + 3), TRIGRAM_WEIGHT)
+            }
+        }
+        return normalize(vector)
+    }
+
+    private fun add(vector: FloatArray, feature: String, weight: Float) {
+        // Spread the bits of the string hash, the sign halves the effect of collisions
+        val hash = feature.hashCode() * -0x61c88647
+        val index = (hash ushr 1) % DIMENSIONS
+        vector[index] += if ((hash and 1) == 0) weight else -weight
+    }
+
+    private fun normalize(vector: FloatArray): FloatArray {
+        val norm = sqrt(vector.sumOf { (it * it).toDouble() }).toFloat()
+        if (norm > 0f) {
+            for (i in vector.indices) vector[i] /= norm
+        }
+        return vector
+    }
+}
@@ -9,12 +9,16 @@ import java.util.UUID
 /**
  * Manages NPC memory: private book pages
  * Uses direct database calls instead of in-memory caching.
+ * Results of search actions are kept until the next context is built.
  */
 class MemoryManager(
     private val privateBookPageRepository: PrivateBookPageRepository,
     private val npcUuid: UUID,
     private val config: BaseConfig
 ) {
+    // Found pages of the search actions since the last context, guarded by this
+    private val searchResults = ArrayList<Map<String, Any>>()
+
     /**
      * Saves or updates a private book page directly to database
      */
@@ -50,14 +54,43 @@ class MemoryManager(
      */
     fun getPage(pageTitle: String): PrivateBookPage? {
         return try {
-            privateBookPageRepository.selectByNpcUuid(npcUuid)
-                .firstOrNull { it.pageTitle == pageTitle }
+            privateBookPageRepository.selectByTitle(npcUuid, pageTitle)
         } catch (e: Exception) {
             LogUtil.error("Error loading private page: $pageTitle", e)
             null
         }
     }
 
+    /**
+     * Searches the private book pages of this NPC in the full-text index, best matches first
+     */
+    fun searchPages(query: String, limit: Int): List<PrivateBookPage> {
+        return try {
+            privateBookPageRepository.search(npcUuid, query, limit)
+        } catch (e: Exception) {
+            LogUtil.error("Error searching private pages for: $query", e)
+            emptyList()
+        }
+    }
+
+    /**
+     * Keeps found pages for the next context
+     */
+    @Synchronized
+    fun addSearchResults(results: List<Map<String, Any>>) {
+        searchResults.addAll(results)
+    }
+
+    /**
+     * Gets the found pages since the last context and forgets them, they are shown once
+     */
+    @Synchronized
+    fun takeSearchResults(): List<Map<String, Any>> {
+        val results = ArrayList(searchResults)
+        searchResults.clear()
+        return results
+    }
+
     /**
      * Deletes a private book page from database
      */
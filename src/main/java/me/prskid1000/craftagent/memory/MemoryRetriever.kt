@@ -0,0 +1,118 @@
+package me.prskid1000.craftagent.memory
+
+import me.prskid1000.craftagent.config.LLMBackendConfig
+import me.prskid1000.craftagent.llm.EmbeddingClient
+import me.prskid1000.craftagent.llm.LLMHttpClientRegistry
+import me.prskid1000.craftagent.llm.ollama.OllamaEmbeddingClient
+import me.prskid1000.craftagent.util.LogUtil
+import java.util.function.Function
+import java.util.function.Supplier
+
+/**
+ * Picks the memory entries (private pages, sharebook pages) most related to the current
+ * situation, so only those go into the prompt instead of the whole book.
+ *
+ * Entries are embedded with the Ollama embedding model of the [LLMBackendConfig], or with the
+ * [HashedNgramEmbedder] if none is set or the server fails. Entry embeddings are cached by
+ * text (least recently used ones are dropped), so an entry is only embedded again after it
+ * changed. Queries are one-off and are not cached.
+ */
+class MemoryRetriever(
+    private val httpClients: LLMHttpClientRegistry,
+    private val configSupplier: Supplier<LLMBackendConfig>
+) {
+    companion object {
+        private const val MAX_CACHED_EMBEDDINGS = 4096
+    }
+
+    private val fallbackEmbedder = HashedNgramEmbedder()
+    @Volatile
+    private var modelEmbedder: EmbeddingClient? = null
+    // Embedding space and text -> vector, in access order; guarded by itself
+    private val cache = object : LinkedHashMap<String, FloatArray>(256, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, FloatArray>): Boolean {
+            return size > MAX_CACHED_EMBEDDINGS
+        }
+    }
+
+    /**
+     * Number of entries selected per query, 0 if all entries are kept
+     */
+    val topK: Int
+        get() = maxOf(0, configSupplier.get().memoryTopK)
+
+    /**
+     * Selects the top-k entries for the query, most related first. The entries are expected
+     * newest first: without a query (e.g. on autonomous turns) the newest k are selected.
+     * All entries are kept in their order if there are no more than k.
+     */
+    fun <T> selectRelevant(query: String, entries: List<T>, text: Function<T, String>): List<T> {
+        val topK = configSupplier.get().memoryTopK
+        if (topK <= 0 || entries.size <= topK) {
+            return entries
+        }
+        if (query.isBlank()) {
+            return entries.take(topK)
+        }
+
+        val texts = entries.map { text.apply(it) }
+        val vectors = try {
+            embed(getEmbedder(), query, texts)
+        } catch (e: Exception) {
+            LogUtil.error("Embedding failed, falling back to hashed n-grams: ${e.message}")
+            embed(fallbackEmbedder, query, texts)
+        }
+        val queryVector = vectors[0]
+        return entries.indices
+            .sortedByDescending { cosine(queryVector, vectors[it + 1]) }
+            .take(topK)
+            .map { entries[it] }
+    }
+
+    private fun getEmbedder(): EmbeddingClient {
+        val config = configSupplier.get()
+        val model = config.embeddingModel
+        if (model.isNullOrBlank()) {
+            return fallbackEmbedder
+        }
+        val current = modelEmbedder
+        val url = config.embeddingUrl
+        if (current != null && current.id == OllamaEmbeddingClient.id(url, model)) {
+            return current
+        }
+        return OllamaEmbeddingClient(model, url, config.embeddingTimeoutSeconds, httpClients).also { modelEmbedder = it }
+    }
+
+    /**
+     * Embeds the query and the texts in one request, the query first. Only texts not in the
+     * cache are sent to the embedder, the query is always sent and never cached.
+     */
+    private fun embed(embedder: EmbeddingClient, query: String, texts: List<String>): List<FloatArray> {
+        val vectors = HashMap<String, FloatArray>()
+        synchronized(cache) {
+            texts.forEach { text -> cache[embedder.id + "|" + text]?.let { vectors[text] = it } }
+        }
+        val missing = texts.filter { it !in vectors }.distinct()
+        val embedded = embedder.embed(listOf(query) + missing)
+        synchronized(cache) {
+            missing.forEachIndexed { index, text ->
+                vectors[text] = embedded[index + 1]
+                cache[embedder.id + "|" + text] = embedded[index + 1]
+            }
+        }
+        return listOf(embedded[0]) + texts.map { vectors.getValue(it) }
+    }
+
+    private fun cosine(a: FloatArray, b: FloatArray): Double {
+        if (a.size != b.size) return 0.0
+        var dot = 0.0
+        var normA = 0.0
+        var normB = 0.0
+        for (i in a.indices) {
+            dot += a[i] * b[i]
+            normA += a[i] * a[i]
+            normB += b[i] * b[i]
+        }
+        return if (normA == 0.0 || normB == 0.0) 0.0 else dot / Math.sqrt(normA * normB)
+    }
+}
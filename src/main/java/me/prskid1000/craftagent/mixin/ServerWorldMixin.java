@@ -0,0 +1,19 @@
+package me.prskid1000.craftagent.mixin;
+
+import me.prskid1000.craftagent.callback.BlockEvents;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin {
+
+    @Inject(method = "onBlockChanged", at = @At("HEAD"))
+    private void onBlockChanged(BlockPos pos, BlockState oldBlock, BlockState newBlock, CallbackInfo ci) {
+        BlockEvents.BLOCK_CHANGED.invoker().onBlockChanged((ServerWorld) (Object) this, pos, oldBlock, newBlock);
+    }
+}
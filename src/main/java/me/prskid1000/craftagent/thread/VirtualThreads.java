@@ -0,0 +1,102 @@
+package me.prskid1000.craftagent.thread;
+
+import me.prskid1000.craftagent.util.LogUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for blocking work like LLM requests, which spend most of their time waiting for
+ * the HTTP response. On Java 21+ these are virtual threads, so waiting does not hold a
+ * platform thread. The mod is also built for Java 17, so the virtual thread API is looked
+ * up by reflection and daemon platform threads are used when it is missing.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final boolean AVAILABLE = OF_VIRTUAL != null;
+    private static volatile ExecutorService shared;
+
+    static {
+        LogUtil.info(AVAILABLE
+                ? "Running LLM requests on virtual threads"
+                : "Virtual threads not available, running LLM requests on platform threads");
+    }
+
+    private VirtualThreads() {}
+
+    /**
+     * Creates a thread factory, for virtual threads if available, daemon platform threads otherwise.
+     *
+     * @param prefix thread name prefix, the threads are numbered
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (AVAILABLE) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                LogUtil.error("Could not create virtual thread factory, using platform threads", e);
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor that runs every task on its own thread. Virtual threads are not
+     * pooled, platform threads are cached and reused for a minute.
+     *
+     * @param prefix thread name prefix, the threads are numbered
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        if (AVAILABLE) {
+            try {
+                Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) perTask.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                LogUtil.error("Could not create virtual thread executor, using platform threads", e);
+            }
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+    }
+
+    /**
+     * Gets the executor shared by short forked tasks, e.g. work running beside an LLM turn.
+     * It is never shut down, its threads do not keep the server from stopping.
+     */
+    public static ExecutorService shared() {
+        ExecutorService executor = shared;
+        if (executor == null) {
+            synchronized (VirtualThreads.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = newExecutor("CraftAgent-Task-");
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package me.prskid1000.craftagent.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of the context for fewer prompt tokens.
+ * Lists of blocks, entities and items are written as tables, a header with the column
+ * names followed by one row of values per entry, instead of repeating every key per entry.
+ * Block and item positions become offsets (dx, dy, dz) from the NPC position in "state".
+ */
+public class CompactContextEncoder {
+
+    private static final List<String> BLOCK_COLUMNS = List.of("type", "dx", "dy", "dz", "mineLevel", "toolNeeded");
+    private static final List<String> ENTITY_COLUMNS = List.of("id", "name", "isPlayer");
+    private static final List<String> ITEM_COLUMNS = List.of("type", "count", "slot");
+    private static final List<String> ITEM_ENTITY_COLUMNS = List.of("type", "count", "distance", "dx", "dy", "dz");
+    private static final String ENCODING_NOTE =
+            "lists are tables {cols, rows}, one row per entry; dx/dy/dz are offsets from state.position";
+
+    private CompactContextEncoder() {}
+
+    /**
+     * Encodes the list sections of the context as tables.
+     *
+     * @param context the context sections, see {@link StructuredInputFormatter#createContextMap}
+     * @return the encoded context, the given map is not modified
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> encode(Map<String, Object> context) {
+        Map<String, Object> encoded = new LinkedHashMap<>();
+        encoded.put("encoding", ENCODING_NOTE);
+        encoded.putAll(context);
+        int[] origin = getOrigin(context);
+
+        if (context.get("inventory") instanceof Map<?, ?> inventory) {
+            Map<String, Object> inventoryTables = new LinkedHashMap<>();
+            ((Map<String, Object>) inventory).forEach((name, items) ->
+                    inventoryTables.put(name, table(ITEM_COLUMNS, (List<Map<String, Object>>) items, origin)));
+            encoded.put("inventory", inventoryTables);
+        }
+        encodeList(encoded, "nearbyBlocks", BLOCK_COLUMNS, origin);
+        encodeList(encoded, "nearbyEntities", ENTITY_COLUMNS, origin);
+
+        if (context.get("lineOfSight") instanceof Map<?, ?> lineOfSight) {
+            Map<String, Object> lineOfSightTables = new LinkedHashMap<>((Map<String, Object>) lineOfSight);
+            encodeList(lineOfSightTables, "items", ITEM_ENTITY_COLUMNS, origin);
+            encodeList(lineOfSightTables, "entities", ENTITY_COLUMNS, origin);
+            encodeList(lineOfSightTables, "visibleBlocks", BLOCK_COLUMNS, origin);
+            encoded.put("lineOfSight", lineOfSightTables);
+        }
+        return encoded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void encodeList(Map<String, Object> section, String name, List<String> columns, int[] origin) {
+        if (section.get(name) instanceof List<?> entries) {
+            section.put(name, table(columns, (List<Map<String, Object>>) entries, origin));
+        }
+    }
+
+    private static Map<String, Object> table(List<String> columns, List<Map<String, Object>> entries, int[] origin) {
+        List<List<Object>> rows = new ArrayList<>(entries.size());
+        for (Map<String, Object> entry : entries) {
+            List<Object> row = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                row.add(switch (column) {
+                    case "dx" -> getCoordinate(entry, "x") - origin[0];
+                    case "dy" -> getCoordinate(entry, "y") - origin[1];
+                    case "dz" -> getCoordinate(entry, "z") - origin[2];
+                    default -> entry.get(column);
+                });
+            }
+            rows.add(row);
+        }
+        Map<String, Object> table = new LinkedHashMap<>();
+        table.put("cols", columns);
+        table.put("rows", rows);
+        return table;
+    }
+
+    private static int getCoordinate(Map<String, Object> entry, String axis) {
+        if (entry.get("position") instanceof Map<?, ?> position && position.get(axis) instanceof Number value) {
+            return value.intValue();
+        }
+        return 0;
+    }
+
+    private static int[] getOrigin(Map<String, Object> context) {
+        if (context.get("state") instanceof Map<?, ?> state) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> stateMap = (Map<String, Object>) state;
+            return new int[]{getCoordinate(stateMap, "x"), getCoordinate(stateMap, "y"), getCoordinate(stateMap, "z")};
+        }
+        return new int[3];
+    }
+}
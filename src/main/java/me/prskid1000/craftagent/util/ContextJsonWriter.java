@@ -0,0 +1,232 @@
+package me.prskid1000.craftagent.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.prskid1000.craftagent.model.context.ContextData;
+import me.prskid1000.craftagent.model.context.WorldContext;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes a {@link WorldContext} as JSON directly from the records with a streaming
+ * {@link JsonGenerator}, without building intermediate maps. Output goes into buffers taken
+ * from a small shared pool and handed back after use. The pool is shared rather than one buffer
+ * per thread, so the number of retained buffers follows the contexts formatted at the same time,
+ * not the threads that ever formatted one. The JSON has the same structure as
+ * {@link StructuredInputFormatter#createContextMap(WorldContext)}.
+ */
+public final class ContextJsonWriter {
+
+    // The codec is only used for the free-form maps (memory, action data)
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+    // Buffers that grew larger than this are not kept, one huge context should not pin memory
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    // About the number of contexts formatted at the same time, more buffers are allocated and dropped
+    private static final int POOL_SIZE = 8;
+    private static final BlockingQueue<StringBuilder> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private ContextJsonWriter() {}
+
+    /**
+     * Takes an empty buffer from the pool, a new one if the pool is empty. It must be handed
+     * back with {@link #releaseBuffer} once its content was copied (e.g. with {@code toString()}).
+     */
+    public static StringBuilder acquireBuffer() {
+        StringBuilder buffer = POOL.poll();
+        return buffer != null ? buffer : new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Hands a buffer back to the pool. Buffers that grew too large or do not fit into the pool are dropped.
+     */
+    public static void releaseBuffer(StringBuilder buffer) {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        buffer.setLength(0);
+        POOL.offer(buffer);
+    }
+
+    /**
+     * Appends the context as JSON to the buffer.
+     */
+    public static void write(WorldContext context, StringBuilder buffer) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(new StringBuilderWriter(buffer))) {
+            generator.writeStartObject();
+
+            writeState(generator, context.state());
+            writeInventory(generator, context.inventory());
+            // Data is already limited by ChunkManager and ContextProvider based on config
+            writeBlocks(generator, "nearbyBlocks", context.nearbyBlocks());
+            writeEntities(generator, "nearbyEntities", context.nearbyEntities());
+
+            if (context.memoryData() != null) {
+                generator.writeObjectField("memory", context.memoryData());
+            }
+            if (context.navigation() != null) {
+                writeNavigation(generator, context.navigation());
+            }
+            if (context.lineOfSight() != null) {
+                writeLineOfSight(generator, context.lineOfSight());
+            }
+            if (context.actionState() != null) {
+                writeActionState(generator, context.actionState());
+            }
+
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeState(JsonGenerator generator, ContextData.StateData state) throws IOException {
+        generator.writeObjectFieldStart("state");
+        writePosition(generator, "position", state.position());
+        generator.writeNumberField("health", state.health());
+        generator.writeNumberField("food", state.food());
+        generator.writeStringField("biome", state.biome());
+        generator.writeEndObject();
+    }
+
+    private static void writeInventory(JsonGenerator generator, ContextData.InventoryData inventory) throws IOException {
+        generator.writeObjectFieldStart("inventory");
+        writeItems(generator, "hotbar", inventory.hotbar());
+        writeItems(generator, "mainInventory", inventory.mainInventory());
+        writeItems(generator, "armor", inventory.armor());
+        writeItems(generator, "offHand", inventory.offHand());
+        generator.writeEndObject();
+    }
+
+    private static void writeItems(JsonGenerator generator, String name, List<ContextData.ItemData> items) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (ContextData.ItemData item : items) {
+            generator.writeStartObject();
+            generator.writeStringField("type", item.type());
+            generator.writeNumberField("count", item.count());
+            generator.writeNumberField("slot", item.slot());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeBlocks(JsonGenerator generator, String name, List<ContextData.BlockData> blocks) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (ContextData.BlockData block : blocks) {
+            writeBlock(generator, block);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeBlock(JsonGenerator generator, ContextData.BlockData block) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", block.type());
+        writePosition(generator, "position", block.position());
+        generator.writeStringField("mineLevel", block.mineLevel());
+        generator.writeStringField("toolNeeded", block.toolNeeded());
+        generator.writeEndObject();
+    }
+
+    private static void writeEntities(JsonGenerator generator, String name, List<ContextData.EntityData> entities) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (ContextData.EntityData entity : entities) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", entity.id());
+            generator.writeStringField("name", entity.name());
+            generator.writeBooleanField("isPlayer", entity.isPlayer());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeNavigation(JsonGenerator generator, ContextData.NavigationData navigation) throws IOException {
+        generator.writeObjectFieldStart("navigation");
+        generator.writeStringField("state", navigation.state());
+        generator.writeStringField("stateDescription", navigation.stateDescription());
+        generator.writeNumberField("timeInCurrentState", navigation.timeInCurrentState());
+        if (navigation.destination() != null) {
+            writePosition(generator, "destination", navigation.destination());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeLineOfSight(JsonGenerator generator, ContextData.LineOfSightData lineOfSight) throws IOException {
+        generator.writeObjectFieldStart("lineOfSight");
+
+        generator.writeArrayFieldStart("items");
+        for (ContextData.ItemEntityData item : lineOfSight.items()) {
+            generator.writeStartObject();
+            generator.writeStringField("type", item.type());
+            generator.writeNumberField("count", item.count());
+            generator.writeNumberField("distance", item.distance());
+            writePosition(generator, "position", item.position());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        writeEntities(generator, "entities", lineOfSight.entities());
+        if (lineOfSight.targetBlock() != null) {
+            generator.writeFieldName("targetBlock");
+            writeBlock(generator, lineOfSight.targetBlock());
+        }
+        writeBlocks(generator, "visibleBlocks", lineOfSight.visibleBlocks());
+
+        generator.writeEndObject();
+    }
+
+    private static void writeActionState(JsonGenerator generator, ContextData.ActionStateData actionState) throws IOException {
+        generator.writeObjectFieldStart("actionState");
+        generator.writeStringField("actionType", actionState.actionType());
+        generator.writeStringField("actionDescription", actionState.actionDescription());
+        generator.writeNumberField("timeInCurrentAction", actionState.timeInCurrentAction());
+        if (actionState.actionData() != null) {
+            generator.writeObjectField("actionData", actionState.actionData());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writePosition(JsonGenerator generator, String name, BlockPos position) throws IOException {
+        generator.writeObjectFieldStart(name);
+        generator.writeNumberField("x", position.getX());
+        generator.writeNumberField("y", position.getY());
+        generator.writeNumberField("z", position.getZ());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Minimal writer appending to a {@link StringBuilder}, unlike {@link java.io.StringWriter}
+     * it does not synchronize and writes into the caller's buffer.
+     */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder buffer;
+
+        StringBuilderWriter(StringBuilder buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            buffer.append(string, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            buffer.append((char) c);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
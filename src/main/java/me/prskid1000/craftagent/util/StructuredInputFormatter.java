@@ -5,6 +5,7 @@ import me.prskid1000.craftagent.model.context.ContextData;
 import me.prskid1000.craftagent.model.context.WorldContext;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -26,124 +27,27 @@ public class StructuredInputFormatter {
      * @return Formatted message with text and JSON
      */
     public static String formatStructured(String prompt, WorldContext worldContext) {
+        // Stream the context straight into the prompt buffer, no intermediate maps or format copies
+        StringBuilder buffer = ContextJsonWriter.acquireBuffer();
         try {
-            // Create JSON context object
-            Map<String, Object> context = new HashMap<>();
-            context.put("state", createStateMap(worldContext.state()));
-            context.put("inventory", createInventoryMap(worldContext.inventory()));
-            // Data is already limited by ChunkManager and ContextProvider based on config
-            context.put("nearbyBlocks", worldContext.nearbyBlocks().stream()
-                    .map(block -> Map.of(
-                            "type", block.type(),
-                            "position", Map.of(
-                                    "x", block.position().getX(),
-                                    "y", block.position().getY(),
-                                    "z", block.position().getZ()
-                            ),
-                            "mineLevel", block.mineLevel(),
-                            "toolNeeded", block.toolNeeded()
-                    ))
-                    .toList());
-            context.put("nearbyEntities", worldContext.nearbyEntities().stream()
-                    .map(entity -> Map.of(
-                            "id", entity.id(),
-                            "name", entity.name(),
-                            "isPlayer", entity.isPlayer()
-                    ))
-                    .toList());
-            
-            // Add memory data if available
-            if (worldContext.memoryData() != null) {
-                context.put("memory", worldContext.memoryData());
-            }
-            
-            // Add navigation data if available
-            if (worldContext.navigation() != null) {
-                Map<String, Object> navMap = new HashMap<>();
-                navMap.put("state", worldContext.navigation().state());
-                navMap.put("stateDescription", worldContext.navigation().stateDescription());
-                navMap.put("timeInCurrentState", worldContext.navigation().timeInCurrentState());
-                if (worldContext.navigation().destination() != null) {
-                    navMap.put("destination", Map.of(
-                            "x", worldContext.navigation().destination().getX(),
-                            "y", worldContext.navigation().destination().getY(),
-                            "z", worldContext.navigation().destination().getZ()
-                    ));
-                }
-                context.put("navigation", navMap);
-            }
-            
-            // Add line of sight data if available
-            if (worldContext.lineOfSight() != null) {
-                Map<String, Object> losMap = new HashMap<>();
-                
-                // Items in line of sight
-                losMap.put("items", worldContext.lineOfSight().items().stream()
-                        .map(item -> Map.of(
-                                "type", item.type(),
-                                "count", item.count(),
-                                "distance", item.distance(),
-                                "position", Map.of(
-                                        "x", item.position().getX(),
-                                        "y", item.position().getY(),
-                                        "z", item.position().getZ()
-                                )
-                        ))
-                        .toList());
-                
-                // Entities in line of sight
-                losMap.put("entities", worldContext.lineOfSight().entities().stream()
-                        .map(entity -> Map.of(
-                                "id", entity.id(),
-                                "name", entity.name(),
-                                "isPlayer", entity.isPlayer()
-                        ))
-                        .toList());
-                
-                // Target block (where NPC is looking)
-                if (worldContext.lineOfSight().targetBlock() != null) {
-                    var targetBlock = worldContext.lineOfSight().targetBlock();
-                    losMap.put("targetBlock", Map.of(
-                            "type", targetBlock.type(),
-                            "position", Map.of(
-                                    "x", targetBlock.position().getX(),
-                                    "y", targetBlock.position().getY(),
-                                    "z", targetBlock.position().getZ()
-                            ),
-                            "mineLevel", targetBlock.mineLevel(),
-                            "toolNeeded", targetBlock.toolNeeded()
-                    ));
-                }
-                
-                // Visible blocks
-                losMap.put("visibleBlocks", worldContext.lineOfSight().visibleBlocks().stream()
-                        .map(block -> Map.of(
-                                "type", block.type(),
-                                "position", Map.of(
-                                        "x", block.position().getX(),
-                                        "y", block.position().getY(),
-                                        "z", block.position().getZ()
-                                ),
-                                "mineLevel", block.mineLevel(),
-                                "toolNeeded", block.toolNeeded()
-                        ))
-                        .toList());
-                
-                context.put("lineOfSight", losMap);
-            }
-            
-            // Add action state data if available
-            if (worldContext.actionState() != null) {
-                Map<String, Object> actionStateMap = new HashMap<>();
-                actionStateMap.put("actionType", worldContext.actionState().actionType());
-                actionStateMap.put("actionDescription", worldContext.actionState().actionDescription());
-                actionStateMap.put("timeInCurrentAction", worldContext.actionState().timeInCurrentAction());
-                if (worldContext.actionState().actionData() != null) {
-                    actionStateMap.put("actionData", worldContext.actionState().actionData());
-                }
-                context.put("actionState", actionStateMap);
-            }
+            buffer.append(prompt).append("\n\n=== CONTEXT DATA (JSON) ===\n");
+            ContextJsonWriter.write(worldContext, buffer);
+            buffer.append("\n=== END CONTEXT ===\n");
+            return buffer.toString();
+        } catch (Exception e) {
+            // If JSON serialization fails, throw exception - no fallback
+            throw new RuntimeException("Failed to format structured input: " + e.getMessage(), e);
+        } finally {
+            ContextJsonWriter.releaseBuffer(buffer);
+        }
+    }
 
+    /**
+     * Same as {@link #formatStructured(String, WorldContext)} for a context that was already
+     * converted with {@link #createContextMap(WorldContext)} (and possibly trimmed).
+     */
+    public static String formatStructured(String prompt, Map<String, Object> context) {
+        try {
             // Convert context to JSON string
             String contextJson = objectMapper.writeValueAsString(context);
 
@@ -162,6 +66,177 @@ public class StructuredInputFormatter {
         }
     }
 
+    /**
+     * Creates the context keyframe, appended to the system prompt in delta mode.
+     * It stays the same across turns until a new keyframe is taken.
+     *
+     * @param keyframeJson The full context at the time of the keyframe
+     * @return Formatted keyframe block
+     */
+    public static String formatKeyframe(String keyframeJson) {
+        return String.format("""
+            
+            === CONTEXT KEYFRAME (JSON) ===
+            Full context at the last keyframe. The latest message carries a CONTEXT DELTA with the
+            sections changed since this keyframe, the current context is this keyframe with the delta applied.
+            %s
+            === END KEYFRAME ===
+            """, keyframeJson);
+    }
+
+    /**
+     * Creates a structured input message with text prompt and the context changes since the keyframe.
+     * Keys in "changed" are section paths (e.g. "memory.mail") holding the new value,
+     * "removed" lists paths no longer present.
+     *
+     * @param prompt The text instruction/prompt
+     * @param deltaJson The context delta, null if the keyframe is current
+     * @return Formatted message with text and JSON delta
+     */
+    public static String formatDelta(String prompt, String deltaJson) {
+        return String.format("""
+            %s
+            
+            === CONTEXT DELTA (JSON, changes since keyframe) ===
+            %s
+            === END CONTEXT ===
+            """, prompt, deltaJson != null ? deltaJson : "{\"changed\":{}}");
+    }
+
+    /**
+     * Serializes a context map (or any part of it) to JSON.
+     */
+    public static String toJson(Object context) {
+        try {
+            return objectMapper.writeValueAsString(context);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize context: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the JSON context object with one entry per context section.
+     */
+    public static Map<String, Object> createContextMap(WorldContext worldContext) {
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put("state", createStateMap(worldContext.state()));
+        context.put("inventory", createInventoryMap(worldContext.inventory()));
+        // Data is already limited by ChunkManager and ContextProvider based on config
+        context.put("nearbyBlocks", worldContext.nearbyBlocks().stream()
+                .map(block -> Map.of(
+                        "type", block.type(),
+                        "position", Map.of(
+                                "x", block.position().getX(),
+                                "y", block.position().getY(),
+                                "z", block.position().getZ()
+                        ),
+                        "mineLevel", block.mineLevel(),
+                        "toolNeeded", block.toolNeeded()
+                ))
+                .toList());
+        context.put("nearbyEntities", worldContext.nearbyEntities().stream()
+                .map(entity -> Map.of(
+                        "id", entity.id(),
+                        "name", entity.name(),
+                        "isPlayer", entity.isPlayer()
+                ))
+                .toList());
+        
+        // Add memory data if available
+        if (worldContext.memoryData() != null) {
+            context.put("memory", worldContext.memoryData());
+        }
+        
+        // Add navigation data if available
+        if (worldContext.navigation() != null) {
+            Map<String, Object> navMap = new HashMap<>();
+            navMap.put("state", worldContext.navigation().state());
+            navMap.put("stateDescription", worldContext.navigation().stateDescription());
+            navMap.put("timeInCurrentState", worldContext.navigation().timeInCurrentState());
+            if (worldContext.navigation().destination() != null) {
+                navMap.put("destination", Map.of(
+                        "x", worldContext.navigation().destination().getX(),
+                        "y", worldContext.navigation().destination().getY(),
+                        "z", worldContext.navigation().destination().getZ()
+                ));
+            }
+            context.put("navigation", navMap);
+        }
+        
+        // Add line of sight data if available
+        if (worldContext.lineOfSight() != null) {
+            Map<String, Object> losMap = new HashMap<>();
+            
+            // Items in line of sight
+            losMap.put("items", worldContext.lineOfSight().items().stream()
+                    .map(item -> Map.of(
+                            "type", item.type(),
+                            "count", item.count(),
+                            "distance", item.distance(),
+                            "position", Map.of(
+                                    "x", item.position().getX(),
+                                    "y", item.position().getY(),
+                                    "z", item.position().getZ()
+                            )
+                    ))
+                    .toList());
+            
+            // Entities in line of sight
+            losMap.put("entities", worldContext.lineOfSight().entities().stream()
+                    .map(entity -> Map.of(
+                            "id", entity.id(),
+                            "name", entity.name(),
+                            "isPlayer", entity.isPlayer()
+                    ))
+                    .toList());
+            
+            // Target block (where NPC is looking)
+            if (worldContext.lineOfSight().targetBlock() != null) {
+                var targetBlock = worldContext.lineOfSight().targetBlock();
+                losMap.put("targetBlock", Map.of(
+                        "type", targetBlock.type(),
+                        "position", Map.of(
+                                "x", targetBlock.position().getX(),
+                                "y", targetBlock.position().getY(),
+                                "z", targetBlock.position().getZ()
+                        ),
+                        "mineLevel", targetBlock.mineLevel(),
+                        "toolNeeded", targetBlock.toolNeeded()
+                ));
+            }
+            
+            // Visible blocks
+            losMap.put("visibleBlocks", worldContext.lineOfSight().visibleBlocks().stream()
+                    .map(block -> Map.of(
+                            "type", block.type(),
+                            "position", Map.of(
+                                    "x", block.position().getX(),
+                                    "y", block.position().getY(),
+                                    "z", block.position().getZ()
+                            ),
+                            "mineLevel", block.mineLevel(),
+                            "toolNeeded", block.toolNeeded()
+                    ))
+                    .toList());
+            
+            context.put("lineOfSight", losMap);
+        }
+        
+        // Add action state data if available
+        if (worldContext.actionState() != null) {
+            Map<String, Object> actionStateMap = new HashMap<>();
+            actionStateMap.put("actionType", worldContext.actionState().actionType());
+            actionStateMap.put("actionDescription", worldContext.actionState().actionDescription());
+            actionStateMap.put("timeInCurrentAction", worldContext.actionState().timeInCurrentAction());
+            if (worldContext.actionState().actionData() != null) {
+                actionStateMap.put("actionData", worldContext.actionState().actionData());
+            }
+            context.put("actionState", actionStateMap);
+        }
+
+        return context;
+    }
+
     private static Map<String, Object> createStateMap(ContextData.StateData state) {
         Map<String, Object> stateMap = new HashMap<>();
         stateMap.put("position", Map.of(